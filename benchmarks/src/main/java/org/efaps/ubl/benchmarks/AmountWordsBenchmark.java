@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.benchmarks;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.efaps.number2words.Converter;
+import org.efaps.ubl.documents.elements.AmountWords;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Legend in words of the cross total of one document, converted each time
+ * as before or served by the cache of {@link AmountWords}. The amounts cycle
+ * through a number of distinct price points, more price points than the
+ * cache holds show the cost of misses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AmountWordsBenchmark
+{
+
+    @Param({ "2000", "100000" })
+    int pricePoints;
+
+    BigDecimal[] amounts;
+
+    int idx;
+
+    @Setup
+    public void setup()
+    {
+        amounts = new BigDecimal[pricePoints];
+        for (var i = 0; i < pricePoints; i++) {
+            amounts[i] = BigDecimal.valueOf(1_000L + i * 137L, 2);
+        }
+        AmountWords.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        if (AmountWords.getMissCount() > 0) {
+            System.out.printf("%nAmountWords hit rate: %.3f (%d hits, %d misses)%n", AmountWords.getHitRate(),
+                            AmountWords.getHitCount(), AmountWords.getMissCount());
+        }
+    }
+
+    private BigDecimal next()
+    {
+        idx = idx + 1 == amounts.length ? 0 : idx + 1;
+        return amounts[idx];
+    }
+
+    @Benchmark
+    public String converted()
+    {
+        final var amount = next();
+        return new StringBuilder().append(Converter.getMaleConverter(new Locale("es"))
+                        .convert(amount.longValue())).append(" y ")
+                        .append(amount.setScale(2, RoundingMode.HALF_UP).toPlainString().replaceAll("^.*\\.", ""))
+                        .append("/100 ").toString().toUpperCase();
+    }
+
+    @Benchmark
+    public String cached()
+    {
+        return AmountWords.get(next());
+    }
+}
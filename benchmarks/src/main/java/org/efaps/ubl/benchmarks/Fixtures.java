@@ -0,0 +1,199 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.benchmarks;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.efaps.ubl.Signing;
+import org.efaps.ubl.SummaryService;
+import org.efaps.ubl.documents.CreditNote;
+import org.efaps.ubl.documents.DeliveryNote;
+import org.efaps.ubl.documents.DocTest;
+import org.efaps.ubl.documents.Invoice;
+import org.efaps.ubl.documents.Receipt;
+import org.efaps.ubl.documents.elements.AdditionalItemProperty;
+import org.efaps.ubl.documents.elements.Delivery;
+import org.efaps.ubl.documents.elements.Equipment;
+import org.efaps.ubl.documents.elements.Line;
+import org.efaps.ubl.documents.elements.Reference;
+import org.efaps.ubl.documents.elements.Shipment;
+import org.efaps.ubl.documents.elements.Stage;
+import org.efaps.ubl.documents.elements.Summary;
+import org.efaps.ubl.documents.elements.Taxes;
+import org.efaps.ubl.documents.elements.Transport;
+import org.efaps.ubl.documents.interfaces.ILine;
+
+/**
+ * Synthetic documents for the benchmarks, built with the supplier, customer
+ * and line of {@link DocTest} repeated as often as needed.
+ */
+public final class Fixtures
+{
+
+    private Fixtures()
+    {
+    }
+
+    public static List<ILine> getLines(final int count)
+    {
+        return new ArrayList<>(Collections.nCopies(count, DocTest.getLines().get(0)));
+    }
+
+    public static Invoice getInvoice(final int lines)
+    {
+        final var count = new BigDecimal(lines);
+        return new Invoice()
+                        .withSupplier(DocTest.getSupplier())
+                        .withCustomer(DocTest.getCustomer())
+                        .withCurrency("PEN")
+                        .withNumber("F001-000156")
+                        .withDate(LocalDate.of(2020, 8, 16))
+                        .withNetTotal(new BigDecimal("100").multiply(count))
+                        .withCrossTotal(new BigDecimal("118").multiply(count))
+                        .withTax(new Taxes.IGV()
+                                        .setAmount(new BigDecimal("18").multiply(count))
+                                        .setTaxableAmount(new BigDecimal("100").multiply(count)))
+                        .withLines(getLines(lines));
+    }
+
+    public static Receipt getReceipt(final String number)
+    {
+        return getReceipt(number, 1);
+    }
+
+    public static Receipt getReceipt(final String number,
+                                     final int lines)
+    {
+        final var count = new BigDecimal(lines);
+        return new Receipt()
+                        .withSupplier(DocTest.getSupplier())
+                        .withCustomer(DocTest.getCustomer())
+                        .withCurrency("PEN")
+                        .withNumber(number)
+                        .withDate(LocalDate.of(2020, 8, 16))
+                        .withNetTotal(new BigDecimal("100").multiply(count))
+                        .withCrossTotal(new BigDecimal("118").multiply(count))
+                        .withTax(new Taxes.IGV()
+                                        .setAmount(new BigDecimal("18").multiply(count))
+                                        .setTaxableAmount(new BigDecimal("100").multiply(count)))
+                        .withLines(getLines(lines));
+    }
+
+    public static CreditNote getCreditNote(final int lines)
+    {
+        final var count = new BigDecimal(lines);
+        return new CreditNote()
+                        .withReference(new Reference()
+                                        .setNumber("F001-000156")
+                                        .setDate(LocalDate.of(2020, 6, 12))
+                                        .setDocType("01"))
+                        .withSupplier(DocTest.getSupplier())
+                        .withCustomer(DocTest.getCustomer())
+                        .withCurrency("PEN")
+                        .withNumber("FC01-000156")
+                        .withDate(LocalDate.of(2020, 8, 16))
+                        .withNetTotal(new BigDecimal("100").multiply(count))
+                        .withCrossTotal(new BigDecimal("118").multiply(count))
+                        .withTax(new Taxes.IGV()
+                                        .setAmount(new BigDecimal("18").multiply(count))
+                                        .setTaxableAmount(new BigDecimal("100").multiply(count)))
+                        .withLines(getLines(lines));
+    }
+
+    public static DeliveryNote getDeliveryNote(final int lines)
+    {
+        final var line = Line.builder().withSku("123.456")
+                        .withDescription("Pasta larga salsa tradicional")
+                        .withQuantity(BigDecimal.ONE)
+                        .withAdditionalItemProperties(Collections.singletonList(new AdditionalItemProperty()))
+                        .build();
+        final var shipment = new Shipment()
+                        .withHandlingCode("01")
+                        .withHandlingInstructions("Handle with care")
+                        .withCrossWeight(new BigDecimal("13.5"))
+                        .withCrossWeightUoM("KGM")
+                        .addInstruction("SUNAT_Envio_IndicadorVehiculoConductoresTransp")
+                        .addStage(new Stage()
+                                        .withMode("01")
+                                        .withStartDate(LocalDate.of(2023, 6, 13))
+                                        .withCarrier(DocTest.getCarrier())
+                                        .withDriver(DocTest.getDriver()))
+                        .withDelivery(new Delivery()
+                                        .withDeliveryAddress(DocTest.getCustomer())
+                                        .withDespatchAddress(DocTest.getSupplier()))
+                        .addTransportUnit(new Transport()
+                                        .addEquipment(new Equipment()
+                                                        .withLicensePlate("ABC-123")
+                                                        .withCertificate("CERT-001589")));
+        return new DeliveryNote()
+                        .withNumber("T001-000156")
+                        .withDate(LocalDate.of(2023, 6, 13))
+                        .withTime(LocalTime.of(15, 11))
+                        .withSupplier(DocTest.getSupplier())
+                        .withCustomer(DocTest.getCustomer())
+                        .withLines(new ArrayList<>(Collections.nCopies(lines, line)))
+                        .withShipment(shipment);
+    }
+
+    /**
+     * @param count number of receipts
+     * @return xml of receipts with consecutive numbers
+     */
+    public static String[] getReceiptXmls(final int count)
+    {
+        final var ret = new String[count];
+        for (var i = 0; i < count; i++) {
+            ret[i] = getReceipt(String.format("B001-%06d", i + 1)).getUBLXml();
+        }
+        return ret;
+    }
+
+    public static Summary getSummary(final int lines)
+    {
+        final var summary = new SummaryService().createSummary(getReceiptXmls(lines));
+        return summary.setNumber("RC-20230228-1001")
+                        .setReferenceDate(LocalDate.of(2023, 2, 28))
+                        .setIssueDate(LocalDate.of(2023, 2, 28))
+                        .setSupplier(DocTest.getSupplier());
+    }
+
+    /**
+     * The keystore of the tests. The benchmarks are expected to be run from
+     * the benchmarks directory, the location can be changed with the system
+     * property <code>ubl.keystore</code>.
+     *
+     * @return the signing configuration
+     */
+    public static Signing getSigning()
+    {
+        var keyStore = System.getProperty("ubl.keystore");
+        if (keyStore == null) {
+            keyStore = Files.exists(Path.of("keystore.jks")) ? "keystore.jks" : "../keystore.jks";
+        }
+        return new Signing()
+                        .withKeyStorePath(keyStore)
+                        .withKeyStorePwd("changeit")
+                        .withKeyAlias("testkey")
+                        .withKeyPwd("changeit");
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.efaps.ubl.documents.CreditNote;
+import org.efaps.ubl.documents.DeliveryNote;
+import org.efaps.ubl.documents.Invoice;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generation of the UBL xml of the documents, with the JAXB marshaller and
+ * with the streaming writer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenerationBenchmark
+{
+
+    @State(Scope.Benchmark)
+    public static class Documents
+    {
+
+        @Param({ "1", "10", "100", "1000" })
+        int lines;
+
+        @Param({ "false", "true" })
+        boolean streamingWriter;
+
+        Invoice invoice;
+        CreditNote creditNote;
+
+        @Setup
+        public void setup()
+        {
+            invoice = Fixtures.getInvoice(lines).withStreamingWriter(streamingWriter);
+            creditNote = Fixtures.getCreditNote(lines).withStreamingWriter(streamingWriter);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DeliveryNotes
+    {
+
+        @Param({ "1", "10", "100", "1000" })
+        int lines;
+
+        DeliveryNote deliveryNote;
+
+        @Setup
+        public void setup()
+        {
+            deliveryNote = Fixtures.getDeliveryNote(lines);
+        }
+    }
+
+    @Benchmark
+    public String invoice(final Documents documents)
+    {
+        return documents.invoice.getUBLXml();
+    }
+
+    @Benchmark
+    public String creditNote(final Documents documents)
+    {
+        return documents.creditNote.getUBLXml();
+    }
+
+    @Benchmark
+    public String deliveryNote(final DeliveryNotes documents)
+    {
+        return documents.deliveryNote.getUBLXml();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.efaps.ubl.marshaller.DocumentMarshaller;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import oasis.names.specification.ubl.schema.xsd.invoice_21.InvoiceType;
+
+/**
+ * Reading and writing of an invoice with the {@link DocumentMarshaller},
+ * without building the object graph from the document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarshallerBenchmark
+{
+
+    @Param({ "1", "100" })
+    int lines;
+
+    String xml;
+    InvoiceType invoice;
+
+    @Setup
+    public void setup()
+    {
+        xml = Fixtures.getInvoice(lines).getUBLXml();
+        invoice = DocumentMarshaller.invoice().read(xml);
+    }
+
+    @Benchmark
+    public InvoiceType read()
+    {
+        return DocumentMarshaller.invoice().read(xml);
+    }
+
+    @Benchmark
+    public String write()
+    {
+        return DocumentMarshaller.invoice().getAsString(invoice);
+    }
+}
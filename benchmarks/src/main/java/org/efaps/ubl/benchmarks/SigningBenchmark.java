@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.efaps.ubl.Signing;
+import org.efaps.ubl.SigningEngine;
+import org.efaps.ubl.dto.SignResponseDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Signing of the different document types. <code>signDocument</code> uses the
+ * engine cached by {@link Signing}, <code>freshEngine</code> builds a new
+ * {@link SigningEngine} for every document, which is what every document
+ * cost before the engine existed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SigningBenchmark
+{
+
+    @Param({ "INVOICE", "CREDIT_NOTE", "DELIVERY_NOTE", "SUMMARY" })
+    String documentType;
+
+    @Param({ "10" })
+    int lines;
+
+    Signing signing;
+    String xml;
+
+    @Setup
+    public void setup()
+    {
+        signing = Fixtures.getSigning();
+        xml = switch (documentType) {
+            case "INVOICE" -> Fixtures.getInvoice(lines).getUBLXml();
+            case "CREDIT_NOTE" -> Fixtures.getCreditNote(lines).getUBLXml();
+            case "DELIVERY_NOTE" -> Fixtures.getDeliveryNote(lines).getUBLXml();
+            case "SUMMARY" -> Fixtures.getSummary(lines).getUBLXml();
+            default -> throw new IllegalArgumentException("Unexpected value: " + documentType);
+        };
+        if (signing.signDocument(xml) == null) {
+            throw new IllegalStateException("Could not sign, check the system property ubl.keystore");
+        }
+    }
+
+    @Benchmark
+    public SignResponseDto signDocument()
+    {
+        return signing.signDocument(xml);
+    }
+
+    @Benchmark
+    public SignResponseDto freshEngine()
+    {
+        return SigningEngine.of(signing).signDocument(xml);
+    }
+}
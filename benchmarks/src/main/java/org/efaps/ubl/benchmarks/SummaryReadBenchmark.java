@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.efaps.ubl.SummaryService;
+import org.efaps.ubl.documents.elements.Summary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading of one receipt with many lines for a summary, extracting only the
+ * needed values or unmarshalling it completely.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SummaryReadBenchmark
+{
+
+    @Param({ "500" })
+    int lines;
+
+    @Param({ "false", "true" })
+    boolean fullUnmarshal;
+
+    String xml;
+
+    SummaryService service;
+
+    @Setup
+    public void setup()
+    {
+        xml = Fixtures.getReceipt("B001-000001", lines).getUBLXml();
+        service = new SummaryService().withFullUnmarshal(fullUnmarshal);
+    }
+
+    @Benchmark
+    public Summary read()
+    {
+        return service.createSummary(xml);
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+import org.efaps.ubl.dto.SignResponseDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Signs a batch of documents in parallel with one {@link SigningEngine}, so
+ * the key is loaded once and the XML factories are reused for the whole
+ * batch. The documents are read lazily from the input and only a limited
+ * number of them is queued at a time. A document that can not be signed does
+ * not stop the batch, its response carries the error instead.
+ *
+ * <pre>
+ * final var responses = BatchSigner.of(signing.getEngine())
+ *                 .withExecutor(executor)
+ *                 .withMaxInFlight(64)
+ *                 .signAll(xmls);
+ * </pre>
+ */
+public final class BatchSigner
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchSigner.class);
+
+    private final SigningEngine engine;
+    private ExecutorService executor;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int maxInFlight = parallelism * 4;
+    private Charset charset = StandardCharsets.UTF_8;
+
+    private BatchSigner(final SigningEngine engine)
+    {
+        this.engine = engine;
+    }
+
+    /**
+     * Executor that runs the signing tasks, e.g. a fixed pool or on Java 21+
+     * <code>Executors.newVirtualThreadPerTaskExecutor()</code>. The executor
+     * belongs to the caller and is not shut down. If none is given a fixed
+     * pool of {@link #withParallelism(int)} threads is used for each batch.
+     *
+     * @param executor executor to use
+     * @return this
+     */
+    public BatchSigner withExecutor(final ExecutorService executor)
+    {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * @param parallelism number of threads of the pool used if no executor
+     *            was given
+     * @return this
+     */
+    public BatchSigner withParallelism(final int parallelism)
+    {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * @param maxInFlight maximum number of documents submitted but not yet
+     *            signed
+     * @return this
+     */
+    public BatchSigner withMaxInFlight(final int maxInFlight)
+    {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    public BatchSigner withCharset(final Charset charset)
+    {
+        this.charset = charset;
+        return this;
+    }
+
+    public List<SignResponseDto> signAll(final Collection<String> xmls)
+    {
+        return signAll(xmls.stream());
+    }
+
+    /**
+     * Signs all documents of the stream.
+     *
+     * @param xmls documents to sign
+     * @return one response per document, in input order
+     */
+    public List<SignResponseDto> signAll(final Stream<String> xmls)
+    {
+        final var executorService = executor == null ? Executors.newFixedThreadPool(parallelism) : executor;
+        final var permits = new Semaphore(maxInFlight);
+        final List<Future<SignResponseDto>> futures = new ArrayList<>();
+        try {
+            final var iterator = xmls.iterator();
+            while (iterator.hasNext()) {
+                final var xml = iterator.next();
+                permits.acquireUninterruptibly();
+                try {
+                    futures.add(executorService.submit(() -> {
+                        try {
+                            return signOne(xml);
+                        } finally {
+                            permits.release();
+                        }
+                    }));
+                } catch (final RejectedExecutionException e) {
+                    permits.release();
+                    futures.add(CompletableFuture.completedFuture(failed(e)));
+                }
+            }
+            final List<SignResponseDto> ret = new ArrayList<>(futures.size());
+            for (final var future : futures) {
+                ret.add(await(future));
+            }
+            return ret;
+        } finally {
+            if (executor == null) {
+                executorService.shutdown();
+            }
+        }
+    }
+
+    private SignResponseDto signOne(final String xml)
+    {
+        SignResponseDto ret;
+        try {
+            ret = engine.sign(xml, charset);
+        } catch (final SigningException e) {
+            LOG.debug("Could not sign document", e);
+            ret = failed(e);
+        }
+        return ret;
+    }
+
+    private SignResponseDto await(final Future<SignResponseDto> future)
+    {
+        SignResponseDto ret;
+        try {
+            ret = future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            ret = failed(e);
+        } catch (final ExecutionException e) {
+            ret = failed(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        }
+        return ret;
+    }
+
+    private static SignResponseDto failed(final Exception error)
+    {
+        return SignResponseDto.builder().withError(error).build();
+    }
+
+    public static BatchSigner of(final SigningEngine engine)
+    {
+        return new BatchSigner(engine);
+    }
+}
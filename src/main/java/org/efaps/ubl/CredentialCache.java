@@ -0,0 +1,322 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.KeyStore.PrivateKeyEntry;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableEntryException;
+import java.security.cert.CertificateException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the private key entry of a keystore so that it is read and decrypted
+ * only once instead of for every signed document. The entry is reloaded if
+ * the modification time of the keystore file changes, which is checked at
+ * most once per {@link #DEFAULT_CHECK_INTERVAL}. One cache exists per keystore
+ * path and alias and can be shared by concurrent signers. The cache does not
+ * keep the passwords. It keeps only a digest, computed once per
+ * {@link Passwords}, to check that a signer uses the same passwords the entry
+ * was loaded with.
+ * <p>
+ * If a reload fails, e.g. while the keystore file is replaced, the last
+ * loaded entry is kept and the keystore is read again only after its
+ * modification time changes again.
+ * </p>
+ */
+public final class CredentialCache
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger(CredentialCache.class);
+
+    /** Default time between two checks of the modification time. */
+    public static final Duration DEFAULT_CHECK_INTERVAL = Duration.ofSeconds(1);
+
+    private static final Map<List<String>, CredentialCache> CACHES = new ConcurrentHashMap<>();
+
+    private final String keyStorePath;
+    private final String keyAlias;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+
+    private volatile Snapshot snapshot;
+    private volatile Failure failure;
+    private volatile long lastLoadNanos;
+    private volatile long checkIntervalNanos = DEFAULT_CHECK_INTERVAL.toNanos();
+    private volatile long lastCheckNanos;
+
+    private CredentialCache(final String keyStorePath,
+                            final String keyAlias)
+    {
+        this.keyStorePath = keyStorePath;
+        this.keyAlias = keyAlias;
+    }
+
+    /**
+     * @param keyStorePwd password of the keystore
+     * @param keyPwd password of the key
+     * @return the key entry or <code>null</code> if it could not be loaded
+     * @see #getKeyEntry(Passwords)
+     */
+    public PrivateKeyEntry getKeyEntry(final String keyStorePwd,
+                                       final String keyPwd)
+    {
+        return getKeyEntry(Passwords.of(keyStorePwd, keyPwd));
+    }
+
+    /**
+     * Gets the key entry, loading it from the keystore if it was not loaded
+     * yet, if the keystore file was modified since the last load or if it was
+     * loaded with other passwords.
+     *
+     * @param passwords passwords of the keystore and the key
+     * @return the key entry or <code>null</code> if it could not be loaded
+     */
+    public PrivateKeyEntry getKeyEntry(final Passwords passwords)
+    {
+        final var digest = passwords.digest;
+        var current = snapshot;
+        final var now = System.nanoTime();
+        if (current != null && now - lastCheckNanos < checkIntervalNanos && Arrays.equals(current.digest, digest)) {
+            hits.increment();
+            return current.keyEntry;
+        }
+        final var lastModified = getLastModified();
+        lastCheckNanos = now;
+        if (current != null && current.matches(lastModified, digest)) {
+            hits.increment();
+        } else {
+            synchronized (this) {
+                current = snapshot;
+                if (current != null && current.matches(lastModified, digest)) {
+                    hits.increment();
+                } else if (failure != null && failure.matches(lastModified, digest)) {
+                    // the same file failed already, keep the last good entry
+                    // as long as it was loaded with the same passwords
+                    current = current != null && Arrays.equals(current.digest, digest) ? current : null;
+                } else {
+                    current = load(lastModified, digest, passwords.keyStorePwd, passwords.keyPwd);
+                }
+            }
+        }
+        return current == null ? null : current.keyEntry;
+    }
+
+    /**
+     * @param checkInterval time between two checks of the modification time
+     *            of the keystore file, {@link Duration#ZERO} to check it on
+     *            every access
+     * @return this
+     */
+    public CredentialCache withCheckInterval(final Duration checkInterval)
+    {
+        checkIntervalNanos = checkInterval.toNanos();
+        return this;
+    }
+
+    /**
+     * Forces the key entry to be read again on the next access.
+     */
+    public void invalidate()
+    {
+        snapshot = null;
+        failure = null;
+    }
+
+    /**
+     * @return number of times the key entry was served from the cache
+     */
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of times the key entry was read from the keystore
+     */
+    public long getLoadCount()
+    {
+        return loads.sum();
+    }
+
+    /**
+     * @return time the last read of the keystore took
+     */
+    public Duration getLastLoadDuration()
+    {
+        return Duration.ofNanos(lastLoadNanos);
+    }
+
+    private Snapshot load(final long lastModified,
+                          final byte[] digest,
+                          final String keyStorePwd,
+                          final String keyPwd)
+    {
+        final var start = System.nanoTime();
+        Snapshot ret = null;
+        try (InputStream in = Files.newInputStream(Path.of(keyStorePath))) {
+            final KeyStore ks = KeyStore.getInstance("JKS");
+            ks.load(in, keyStorePwd.toCharArray());
+            final var keyEntry = (KeyStore.PrivateKeyEntry) ks.getEntry(keyAlias,
+                            new KeyStore.PasswordProtection(keyPwd.toCharArray()));
+            if (keyEntry != null) {
+                ret = new Snapshot(keyEntry, lastModified, digest);
+            } else {
+                LOG.error("No key '{}' in '{}'", keyAlias, keyStorePath);
+            }
+        } catch (KeyStoreException | NoSuchAlgorithmException | CertificateException | UnrecoverableEntryException
+                        | IOException e) {
+            LOG.error("Catched", e);
+        }
+        lastLoadNanos = System.nanoTime() - start;
+        loads.increment();
+        if (ret == null) {
+            failure = new Failure(lastModified, digest);
+            final var current = snapshot;
+            // keep the last good entry for signers with the same passwords
+            ret = current != null && Arrays.equals(current.digest, digest) ? current : null;
+        } else {
+            snapshot = ret;
+            failure = null;
+            LOG.debug("Loaded key '{}' from '{}' in {}ms", keyAlias, keyStorePath, lastLoadNanos / 1_000_000);
+        }
+        return ret;
+    }
+
+    private long getLastModified()
+    {
+        long ret = -1;
+        try {
+            ret = Files.getLastModifiedTime(Path.of(keyStorePath)).toMillis();
+        } catch (final IOException e) {
+            LOG.warn("Could not read modification time of '{}'", keyStorePath);
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the shared cache for the given keystore and alias.
+     *
+     * @param keyStorePath path to the keystore file
+     * @param keyAlias alias of the key
+     * @return the cache
+     */
+    public static CredentialCache of(final String keyStorePath,
+                                     final String keyAlias)
+    {
+        return CACHES.computeIfAbsent(Arrays.asList(keyStorePath, keyAlias),
+                        key -> new CredentialCache(keyStorePath, keyAlias));
+    }
+
+    /**
+     * Passwords of a keystore and its key, with the digest the cache compares.
+     * The digest is computed once, so a signer keeps the instance instead of
+     * passing the passwords for every document.
+     */
+    public static final class Passwords
+    {
+
+        private final String keyStorePwd;
+        private final String keyPwd;
+        private final byte[] digest;
+
+        private Passwords(final String keyStorePwd,
+                          final String keyPwd)
+        {
+            this.keyStorePwd = keyStorePwd;
+            this.keyPwd = keyPwd;
+            try {
+                final var md = MessageDigest.getInstance("SHA-256");
+                md.update(String.valueOf(keyStorePwd).getBytes(StandardCharsets.UTF_8));
+                md.update((byte) 0);
+                md.update(String.valueOf(keyPwd).getBytes(StandardCharsets.UTF_8));
+                digest = md.digest();
+            } catch (final NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * @param keyStorePwd password of the keystore
+         * @param keyPwd password of the key
+         * @return new passwords
+         */
+        public static Passwords of(final String keyStorePwd,
+                                   final String keyPwd)
+        {
+            return new Passwords(keyStorePwd, keyPwd);
+        }
+    }
+
+    private static final class Snapshot
+    {
+
+        private final PrivateKeyEntry keyEntry;
+        private final long lastModified;
+        private final byte[] digest;
+
+        private Snapshot(final PrivateKeyEntry keyEntry,
+                         final long lastModified,
+                         final byte[] digest)
+        {
+            this.keyEntry = keyEntry;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+
+        private boolean matches(final long modified,
+                                final byte[] passwords)
+        {
+            return lastModified == modified && Arrays.equals(digest, passwords);
+        }
+    }
+
+    private static final class Failure
+    {
+
+        private final long lastModified;
+        private final byte[] digest;
+
+        private Failure(final long lastModified,
+                        final byte[] digest)
+        {
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+
+        private boolean matches(final long modified,
+                                final byte[] passwords)
+        {
+            return lastModified == modified && Arrays.equals(digest, passwords);
+        }
+    }
+}
@@ -15,25 +15,23 @@
  */
 package org.efaps.ubl;
 
-import java.io.ByteArrayInputStream;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.security.InvalidAlgorithmParameterException;
-import java.security.KeyStore;
 import java.security.KeyStore.PrivateKeyEntry;
-import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
-import java.security.UnrecoverableEntryException;
-import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
 
 import javax.xml.XMLConstants;
 import javax.xml.crypto.MarshalException;
@@ -51,32 +49,15 @@ import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
 import javax.xml.crypto.dsig.spec.TransformParameterSpec;
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
+import org.efaps.ubl.documents.AbstractDocument;
+import org.efaps.ubl.documents.elements.Summary;
 import org.efaps.ubl.dto.SignResponseDto;
-import org.efaps.ubl.extension.Definitions;
 import org.efaps.ubl.marshaller.DocumentMarshaller;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
-import com.helger.ubl21.CUBL21;
-import com.helger.ubl21.UBL21NamespaceContext;
 import com.helger.xsds.xmldsig.CanonicalizationMethodType;
 import com.helger.xsds.xmldsig.DigestMethodType;
 import com.helger.xsds.xmldsig.KeyInfoType;
@@ -102,28 +83,52 @@ public class Signing
     private String keyStorePwd;
     private String keyAlias;
     private String keyPwd;
+    private boolean jaxbRoundTrip;
+    private volatile SigningEngine engine;
+    private volatile CredentialCache.Passwords passwords;
 
     public Signing withKeyStorePath(final String keyStorePath)
     {
         this.keyStorePath = keyStorePath;
+        engine = null;
         return this;
     }
 
     public Signing withKeyStorePwd(final String keyStorePwd)
     {
         this.keyStorePwd = keyStorePwd;
+        engine = null;
+        passwords = null;
         return this;
     }
 
     public Signing withKeyAlias(final String keyAlias)
     {
         this.keyAlias = keyAlias;
+        engine = null;
         return this;
     }
 
     public Signing withKeyPwd(final String keyPwd)
     {
         this.keyPwd = keyPwd;
+        engine = null;
+        passwords = null;
+        return this;
+    }
+
+    /**
+     * Compatibility switch: read the document with JAXB and marshal it again
+     * to add the extension for the signature, as earlier versions did,
+     * instead of adding it directly to the parsed document.
+     *
+     * @param jaxbRoundTrip use the JAXB round trip
+     * @return this
+     */
+    public Signing withJaxbRoundTrip(final boolean jaxbRoundTrip)
+    {
+        this.jaxbRoundTrip = jaxbRoundTrip;
+        engine = null;
         return this;
     }
 
@@ -254,282 +259,143 @@ public class Signing
     }
 
     public SignResponseDto signDocument(final String xml, final Charset charset)
+    {
+        return getEngine().signDocument(xml, charset);
+    }
+
+    /**
+     * Signs the document and writes it to the stream. The response contains
+     * only the hash.
+     *
+     * @param xml document to sign
+     * @param charset charset of the signed document
+     * @param out stream to write the signed document to, not closed
+     * @return the hash of the signed document, <code>null</code> on error
+     */
+    public SignResponseDto signDocument(final String xml,
+                                        final Charset charset,
+                                        final OutputStream out)
     {
         SignResponseDto ret = null;
-        var xml2 = "";
         try {
-            if (xml.contains("<CreditNote ")) {
-                final var creditNote = DocumentMarshaller.creditNote().read(xml);
-                final var extension = new UBLExtensionType();
-                final var extensionContent = new ExtensionContentType();
-                extension.setExtensionContent(extensionContent);
-                if (creditNote.getUBLExtensions() == null) {
-                    creditNote.setUBLExtensions(new UBLExtensionsType());
-                }
-                creditNote.getUBLExtensions().addUBLExtension(extension);
-                if (!UBL21NamespaceContext.getInstance().getPrefixToNamespaceURIMap().containsKey("sac")) {
-                    UBL21NamespaceContext.getInstance().addMapping("sac", Definitions.NAMESPACE_SUNATAGGREGATE);
-                    UBL21NamespaceContext.getInstance().removeMapping("cec");
-                    UBL21NamespaceContext.getInstance().addMapping("ext", CUBL21.XML_SCHEMA_CEC_NAMESPACE_URL);
-                }
-
-                xml2 = DocumentMarshaller.creditNote()
-                                .setCharset(charset)
-                                .setUseSchema(false)
-                                .setFormattedOutput(true).getAsString(creditNote);
-            } else if (xml.contains("<DespatchAdvice ")) {
-                final var deliveryNote = DocumentMarshaller.deliveryNote().read(xml);
-                final var extension = new UBLExtensionType();
-                final var extensionContent = new ExtensionContentType();
-                extension.setExtensionContent(extensionContent);
-                if (deliveryNote.getUBLExtensions() == null) {
-                    deliveryNote.setUBLExtensions(new UBLExtensionsType());
-                }
-                deliveryNote.getUBLExtensions().addUBLExtension(extension);
-                if (!UBL21NamespaceContext.getInstance().getPrefixToNamespaceURIMap().containsKey("sac")) {
-                    UBL21NamespaceContext.getInstance().addMapping("sac", Definitions.NAMESPACE_SUNATAGGREGATE);
-                    UBL21NamespaceContext.getInstance().removeMapping("cec");
-                    UBL21NamespaceContext.getInstance().addMapping("ext", CUBL21.XML_SCHEMA_CEC_NAMESPACE_URL);
-                }
-                xml2 = DocumentMarshaller.deliveryNote()
-                                .setCharset(charset)
-                                .setUseSchema(false)
-                                .setFormattedOutput(true)
-                                .getAsString(deliveryNote);
-            } else if (xml.contains("<SummaryDocuments ")) {
-                final var summary = DocumentMarshaller.summary().read(xml);
-                final var extension = new UBLExtensionType();
-                final var extensionContent = new ExtensionContentType();
-                extension.setExtensionContent(extensionContent);
-                if (summary.getUBLExtensions() == null) {
-                    summary.setUBLExtensions(new UBLExtensionsType());
-                }
-                summary.getUBLExtensions().addUBLExtension(extension);
-                xml2 = DocumentMarshaller.summary()
-                                .setCharset(charset)
-                                .setUseSchema(false)
-                                .setFormattedOutput(true)
-                                .getAsString(summary);
-            } else {
-                final var invoice = DocumentMarshaller.invoice().read(xml);
-
-                final var extension = new UBLExtensionType();
-                final var extensionContent = new ExtensionContentType();
-                extension.setExtensionContent(extensionContent);
-                if (invoice.getUBLExtensions() == null) {
-                    invoice.setUBLExtensions(new UBLExtensionsType());
-                }
-                invoice.getUBLExtensions().addUBLExtension(extension);
-                if (!UBL21NamespaceContext.getInstance().getPrefixToNamespaceURIMap().containsKey("sac")) {
-                    UBL21NamespaceContext.getInstance().addMapping("sac", Definitions.NAMESPACE_SUNATAGGREGATE);
-                    UBL21NamespaceContext.getInstance().removeMapping("cec");
-                    UBL21NamespaceContext.getInstance().addMapping("ext", CUBL21.XML_SCHEMA_CEC_NAMESPACE_URL);
-                }
-
-                xml2 = DocumentMarshaller.invoice()
-                                .setCharset(charset)
-                                .setUseSchema(false)
-                                .setFormattedOutput(true).getAsString(invoice);
-            }
-            final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-            final DocumentBuilder builder = dbf.newDocumentBuilder();
-            final var doc = builder.parse(new ByteArrayInputStream(xml2.getBytes(charset)));
-            final XPathFactory factory = XPathFactory.newInstance();
-            final XPath xPath = factory.newXPath();
-            xPath.setNamespaceContext(new UniversalNamespaceResolver(doc));
-
-            if (doc != null) {
-                final NodeList nodeList = (NodeList) xPath.evaluate("//text()[normalize-space()='']", doc,
-                                XPathConstants.NODESET);
-                for (int i = 0; i < nodeList.getLength(); i++) {
-                    final Node nodeO = nodeList.item(i);
-                    final Node nodeN = nodeO.cloneNode(true);
-                    nodeN.setNodeValue(nodeO.getNodeValue().replaceAll("(\\t|\\ )", ""));
-                    nodeO.getParentNode().replaceChild(nodeN, nodeO);
-                }
-            }
-
-            final var signatureFactory = XMLSignatureFactory.getInstance("DOM");
-            final var ref = signatureFactory.newReference("",
-                            signatureFactory.newDigestMethod("http://www.w3.org/2000/09/xmldsig#sha1", null),
-                            Collections.singletonList(
-                                            signatureFactory.newTransform(
-                                                            "http://www.w3.org/2000/09/xmldsig#enveloped-signature",
-                                                            (TransformParameterSpec) null)),
-                            null, null);
-            final var signedInfo = signatureFactory.newSignedInfo(
-                            signatureFactory.newCanonicalizationMethod(
-                                            "http://www.w3.org/TR/2001/REC-xml-c14n-20010315",
-                                            (C14NMethodParameterSpec) null),
-                            signatureFactory.newSignatureMethod("http://www.w3.org/2000/09/xmldsig#rsa-sha1", null),
-                            Collections.singletonList(ref));
-
-            final var x509Content = new ArrayList<>();
-            final var cert = getCertificate();
-            x509Content.add(cert.getSubjectX500Principal().getName());
-            x509Content.add(cert);
-
-            final var keyInfoFactory = signatureFactory.getKeyInfoFactory();
-            final X509Data xd = keyInfoFactory.newX509Data(x509Content);
-            final KeyInfo ki = keyInfoFactory.newKeyInfo(Collections.singletonList(xd));
-
-            final DOMSignContext dsc = new DOMSignContext(getPrivateKey(), getNodeToSign(doc, xPath));
-            final XMLSignature signature = signatureFactory.newXMLSignature(signedInfo, ki);
-            dsc.setDefaultNamespacePrefix("ds");
-            signature.sign(dsc);
-
-            final var hash = signature.getSignedInfo().getReferences().get(0).getDigestValue();
-
-            final var idReference = getSignReference(doc, xPath);
-            final Element elementParent = (Element) dsc.getParent();
-            if (idReference != null && elementParent.getElementsByTagName("ds:Signature") != null) {
-                final Element elementSignature = (Element) elementParent.getElementsByTagName("ds:Signature").item(0);
-                elementSignature.setAttribute("Id", idReference);
-            }
-
-            final DOMSource source = new DOMSource(doc);
-            final StringWriter out = new StringWriter();
-            final StreamResult result = new StreamResult(out);
-            final TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            final Transformer transformer = transformerFactory.newTransformer();
-
-            transformer.setOutputProperty("encoding", charset.displayName());
-            transformer.transform(source, result);
-
-            ret = SignResponseDto.builder()
-                            .withUbl(out.toString())
-                            .withHash(Base64.getEncoder().encodeToString(hash))
-                            .build();
-        } catch (final NoSuchAlgorithmException | ParserConfigurationException | SAXException | IOException
-                        | InvalidAlgorithmParameterException | MarshalException | XMLSignatureException
-                        | XPathExpressionException | TransformerException e) {
+            ret = getEngine().sign(xml, charset, out);
+        } catch (final SigningException e) {
             LOG.error("Catched", e);
         }
         return ret;
     }
 
-    public SignResponseDto signInvoice(final String xml)
+    /**
+     * Signs the document and writes it to the channel. The response contains
+     * only the hash.
+     *
+     * @param xml document to sign
+     * @param charset charset of the signed document
+     * @param channel channel to write the signed document to, not closed
+     * @return the hash of the signed document, <code>null</code> on error
+     */
+    public SignResponseDto signDocument(final String xml,
+                                        final Charset charset,
+                                        final WritableByteChannel channel)
     {
         SignResponseDto ret = null;
         try {
-            final var invoice = DocumentMarshaller.invoice().read(xml);
-            final var extension = new UBLExtensionType();
-            final var extensionContent = new ExtensionContentType();
-            extension.setExtensionContent(extensionContent);
-            if (invoice.getUBLExtensions() == null) {
-                invoice.setUBLExtensions(new UBLExtensionsType());
-            }
-            invoice.getUBLExtensions().addUBLExtension(extension);
-
-            if (!UBL21NamespaceContext.getInstance().getPrefixToNamespaceURIMap().containsKey("sac")) {
-                UBL21NamespaceContext.getInstance().addMapping("sac", Definitions.NAMESPACE_SUNATAGGREGATE);
-                UBL21NamespaceContext.getInstance().removeMapping("cec");
-                UBL21NamespaceContext.getInstance().addMapping("ext", CUBL21.XML_SCHEMA_CEC_NAMESPACE_URL);
-            }
-
-            final var xml2 = DocumentMarshaller.invoice()
-                            .setCharset(StandardCharsets.UTF_8)
-                            .setUseSchema(false)
-                            .setFormattedOutput(true).getAsString(invoice);
-
-            final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-            final DocumentBuilder builder = dbf.newDocumentBuilder();
-            final var doc = builder.parse(new ByteArrayInputStream(xml2.getBytes(StandardCharsets.UTF_8)));
-            final XPathFactory factory = XPathFactory.newInstance();
-            final XPath xPath = factory.newXPath();
-            xPath.setNamespaceContext(new UniversalNamespaceResolver(doc));
-
-            if (doc != null) {
-                final NodeList nodeList = (NodeList) xPath.evaluate("//text()[normalize-space()='']", doc,
-                                XPathConstants.NODESET);
-                for (int i = 0; i < nodeList.getLength(); i++) {
-                    final Node nodeO = nodeList.item(i);
-                    final Node nodeN = nodeO.cloneNode(true);
-                    nodeN.setNodeValue(nodeO.getNodeValue().replaceAll("(\\t|\\ )", ""));
-                    nodeO.getParentNode().replaceChild(nodeN, nodeO);
-                }
-            }
-
-            final var signatureFactory = XMLSignatureFactory.getInstance("DOM");
-            final var ref = signatureFactory.newReference("",
-                            signatureFactory.newDigestMethod("http://www.w3.org/2000/09/xmldsig#sha1", null),
-                            Collections.singletonList(
-                                            signatureFactory.newTransform(
-                                                            "http://www.w3.org/2000/09/xmldsig#enveloped-signature",
-                                                            (TransformParameterSpec) null)),
-                            null, null);
-            final var signedInfo = signatureFactory.newSignedInfo(
-                            signatureFactory.newCanonicalizationMethod(
-                                            "http://www.w3.org/TR/2001/REC-xml-c14n-20010315",
-                                            (C14NMethodParameterSpec) null),
-                            signatureFactory.newSignatureMethod("http://www.w3.org/2000/09/xmldsig#rsa-sha1", null),
-                            Collections.singletonList(ref));
-
-            final var x509Content = new ArrayList<>();
-            final var cert = getCertificate();
-            x509Content.add(cert.getSubjectX500Principal().getName());
-            x509Content.add(cert);
-
-            final var keyInfoFactory = signatureFactory.getKeyInfoFactory();
-            final X509Data xd = keyInfoFactory.newX509Data(x509Content);
-            final KeyInfo ki = keyInfoFactory.newKeyInfo(Collections.singletonList(xd));
-
-            final DOMSignContext dsc = new DOMSignContext(getPrivateKey(), getNodeToSign(doc, xPath));
-            final XMLSignature signature = signatureFactory.newXMLSignature(signedInfo, ki);
-            dsc.setDefaultNamespacePrefix("ds");
-            signature.sign(dsc);
-
-            final var hash = signature.getSignedInfo().getReferences().get(0).getDigestValue();
-
-            final var idReference = getSignReference(doc, xPath);
-            final Element elementParent = (Element) dsc.getParent();
-            if (idReference != null && elementParent.getElementsByTagName("ds:Signature") != null) {
-                final Element elementSignature = (Element) elementParent.getElementsByTagName("ds:Signature").item(0);
-                elementSignature.setAttribute("Id", idReference);
-            }
-
-            final DOMSource source = new DOMSource(doc);
-            final StringWriter out = new StringWriter();
-            final StreamResult result = new StreamResult(out);
-            final TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            final Transformer transformer = transformerFactory.newTransformer();
-
-            transformer.setOutputProperty("encoding", "UTF-8");
-            transformer.transform(source, result);
+            ret = getEngine().sign(xml, charset, channel);
+        } catch (final SigningException e) {
+            LOG.error("Catched", e);
+        }
+        return ret;
+    }
 
-            ret = SignResponseDto.builder()
-                            .withUbl(out.toString())
-                            .withHash(Base64.getEncoder().encodeToString(hash))
-                            .build();
-        } catch (final NoSuchAlgorithmException | ParserConfigurationException | SAXException | IOException
-                        | InvalidAlgorithmParameterException | MarshalException | XMLSignatureException
-                        | XPathExpressionException | TransformerException e) {
+    /**
+     * Signs the document and writes it to a file.
+     *
+     * @param xml document to sign
+     * @param charset charset of the signed document
+     * @param path file to write the signed document to
+     * @return the hash and path of the signed document, <code>null</code> on
+     *         error
+     */
+    public SignResponseDto signDocument(final String xml,
+                                        final Charset charset,
+                                        final Path path)
+    {
+        SignResponseDto ret = null;
+        try {
+            ret = getEngine().sign(xml, charset, path);
+        } catch (final SigningException e) {
             LOG.error("Catched", e);
         }
         return ret;
     }
 
-    protected Node getNodeToSign(final Document doc, final XPath xpath)
-        throws XPathExpressionException
+    /**
+     * Signs the document without serializing it to a String first.
+     *
+     * @param document document to sign
+     * @return the signed document and its hash, <code>null</code> on error
+     */
+    public SignResponseDto signDocument(final AbstractDocument<?> document)
     {
-        final var nodeToSign = (Node) xpath.evaluate(
-                        "//ext:UBLExtensions/ext:UBLExtension/ext:ExtensionContent", doc,
-                        XPathConstants.NODE);
-        if (nodeToSign == null) {
+        return getEngine().signDocument(document.getUBLDocument(), document.getEncoding(),
+                        document.isFormattedOutput());
+    }
 
-        }
-        return nodeToSign;
+    /**
+     * Signs the summary without serializing it to a String first.
+     *
+     * @param summary summary to sign
+     * @return the signed document and its hash, <code>null</code> on error
+     */
+    public SignResponseDto signDocument(final Summary summary)
+    {
+        return getEngine().signDocument(summary.getUBLDocument(), summary.getEncoding(),
+                        summary.isFormattedOutput());
+    }
+
+    public SignResponseDto signInvoice(final String xml)
+    {
+        return getEngine().signInvoice(xml);
+    }
+
+    /**
+     * Signs all documents in parallel.
+     *
+     * @param xmls documents to sign
+     * @return one response per document, in input order
+     * @see BatchSigner
+     */
+    public List<SignResponseDto> signAll(final Collection<String> xmls)
+    {
+        return getEngine().signAll(xmls);
+    }
+
+    /**
+     * Signs all documents in parallel.
+     *
+     * @param xmls documents to sign
+     * @return one response per document, in input order
+     * @see BatchSigner
+     */
+    public List<SignResponseDto> signAll(final Stream<String> xmls)
+    {
+        return getEngine().signAll(xmls);
     }
 
-    protected String getSignReference(final Document doc, final XPath xpath)
-        throws XPathExpressionException
+    /**
+     * Gets the engine for the current configuration. The engine is created on
+     * first use and reused until the configuration changes.
+     *
+     * @return the signing engine
+     */
+    public SigningEngine getEngine()
     {
-        final String value = (String) xpath.evaluate(
-                        "//cac:Signature/cac:DigitalSignatureAttachment/cac:ExternalReference/cbc:URI", doc,
-                        XPathConstants.STRING);
-        return value;
+        var ret = engine;
+        if (ret == null) {
+            ret = SigningEngine.of(this);
+            engine = ret;
+        }
+        return ret;
     }
 
     protected X509Certificate getCertificate()
@@ -544,19 +410,30 @@ public class Signing
 
     protected PrivateKeyEntry getKeyEntry()
     {
-        PrivateKeyEntry ret = null;
-        try {
-            final KeyStore ks = KeyStore.getInstance("JKS");
-            ks.load(new FileInputStream(getKeyStorePath()), getKeyStorePwd().toCharArray());
-            ret = (KeyStore.PrivateKeyEntry) ks.getEntry(getKeyAlias(),
-                            new KeyStore.PasswordProtection(getKeyPwd().toCharArray()));
-        } catch (KeyStoreException | NoSuchAlgorithmException | CertificateException | UnrecoverableEntryException
-                        | IOException e) {
-            LOG.error("Catched", e);
+        return getCredentialCache().getKeyEntry(getPasswords());
+    }
+
+    /**
+     * The passwords and their digest are kept until the configuration
+     * changes, so that they are not digested again for every document.
+     *
+     * @return the passwords of the keystore and the key
+     */
+    private CredentialCache.Passwords getPasswords()
+    {
+        var ret = passwords;
+        if (ret == null) {
+            ret = CredentialCache.Passwords.of(getKeyStorePwd(), getKeyPwd());
+            passwords = ret;
         }
         return ret;
     }
 
+    public CredentialCache getCredentialCache()
+    {
+        return CredentialCache.of(getKeyStorePath(), getKeyAlias());
+    }
+
     protected String getKeyStorePwd()
     {
         return keyStorePwd;
@@ -577,6 +454,11 @@ public class Signing
         return keyPwd;
     }
 
+    protected boolean isJaxbRoundTrip()
+    {
+        return jaxbRoundTrip;
+    }
+
     public static class UniversalNamespaceResolver
         implements NamespaceContext
     {
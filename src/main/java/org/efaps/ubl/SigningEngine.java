@@ -0,0 +1,898 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyStore.PrivateKeyEntry;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import javax.xml.XMLConstants;
+import javax.xml.crypto.MarshalException;
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.SignatureMethod;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureException;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMSignContext;
+import javax.xml.crypto.dsig.keyinfo.KeyInfo;
+import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
+import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.efaps.ubl.dto.SignResponseDto;
+import org.efaps.ubl.instrumentation.Instrumentations;
+import org.efaps.ubl.instrumentation.Operation;
+import org.efaps.ubl.instrumentation.Phase;
+import org.efaps.ubl.instrumentation.SignEvent;
+import org.efaps.ubl.marshaller.DocumentMarshaller;
+import org.efaps.ubl.marshaller.DocumentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.helger.ubl21.CUBL21;
+import com.helger.xml.namespace.MapBasedNamespaceContext;
+
+import oasis.names.specification.ubl.schema.xsd.commonextensioncomponents_21.ExtensionContentType;
+import oasis.names.specification.ubl.schema.xsd.commonextensioncomponents_21.UBLExtensionType;
+import oasis.names.specification.ubl.schema.xsd.commonextensioncomponents_21.UBLExtensionsType;
+
+/**
+ * Immutable signing engine built once from a {@link Signing} configuration.
+ * The XML factories and XMLDSig objects are expensive to create and not
+ * thread-safe, therefore each thread using the engine gets its own set that
+ * is reused for every document it signs. A single instance can be shared by
+ * all threads of a pool.
+ */
+public final class SigningEngine
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger(SigningEngine.class);
+
+    private static final String DIGEST_METHOD = "http://www.w3.org/2000/09/xmldsig#sha1";
+    private static final String TRANSFORM = "http://www.w3.org/2000/09/xmldsig#enveloped-signature";
+    private static final String CANONICALIZATION_METHOD = "http://www.w3.org/TR/2001/REC-xml-c14n-20010315";
+    private static final String SIGNATURE_METHOD = "http://www.w3.org/2000/09/xmldsig#rsa-sha1";
+
+    private static final String XPATH_NODE_TO_SIGN = "//ext:UBLExtensions/ext:UBLExtension/ext:ExtensionContent";
+    private static final String XPATH_SIGN_REFERENCE
+        = "//cac:Signature/cac:DigitalSignatureAttachment/cac:ExternalReference/cbc:URI";
+
+    private final Supplier<PrivateKeyEntry> keyEntry;
+    private final boolean jaxbRoundTrip;
+
+    private final ThreadLocal<Toolkit> toolkit = ThreadLocal.withInitial(Toolkit::new);
+
+    private SigningEngine(final Signing signing)
+    {
+        // taken from the signing, so that subclasses can provide the key
+        if (overrides(signing, "getPrivateKey") || overrides(signing, "getCertificate")) {
+            keyEntry = () -> new PrivateKeyEntry(signing.getPrivateKey(),
+                            new Certificate[] { signing.getCertificate() });
+        } else {
+            keyEntry = signing::getKeyEntry;
+        }
+        jaxbRoundTrip = signing.isJaxbRoundTrip();
+    }
+
+    public SignResponseDto signDocument(final String xml)
+    {
+        return signDocument(xml, StandardCharsets.UTF_8);
+    }
+
+    public SignResponseDto signDocument(final String xml,
+                                        final Charset charset)
+    {
+        SignResponseDto ret = null;
+        try {
+            ret = sign(xml, charset);
+        } catch (final SigningException e) {
+            LOG.error("Catched", e);
+        }
+        return ret;
+    }
+
+    /**
+     * Signs the document, reporting failures to the caller instead of
+     * logging them.
+     *
+     * @param xml document to sign
+     * @param charset charset of the signed document
+     * @return the signed document and its hash
+     * @throws SigningException the document could not be signed
+     */
+    public SignResponseDto sign(final String xml,
+                                final Charset charset)
+        throws SigningException
+    {
+        final var out = new StringWriter();
+        final var hash = sign(xml, charset, new StreamResult(out));
+        return SignResponseDto.builder()
+                        .withUbl(out.toString())
+                        .withHash(hash)
+                        .build();
+    }
+
+    /**
+     * Signs the document and writes it to the stream, encoded with the given
+     * charset, without building it as String first. The stream is not
+     * closed.
+     *
+     * @param xml document to sign
+     * @param charset charset of the signed document
+     * @param out stream to write the signed document to
+     * @return the hash of the signed document
+     * @throws SigningException the document could not be signed
+     */
+    public SignResponseDto sign(final String xml,
+                                final Charset charset,
+                                final OutputStream out)
+        throws SigningException
+    {
+        return SignResponseDto.builder()
+                        .withHash(sign(xml, charset, new StreamResult(out)))
+                        .build();
+    }
+
+    /**
+     * Signs the document and writes it to the channel. The channel is not
+     * closed.
+     *
+     * @param xml document to sign
+     * @param charset charset of the signed document
+     * @param channel channel to write the signed document to
+     * @return the hash of the signed document
+     * @throws SigningException the document could not be signed
+     */
+    public SignResponseDto sign(final String xml,
+                                final Charset charset,
+                                final WritableByteChannel channel)
+        throws SigningException
+    {
+        return sign(xml, charset, Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Signs the document and writes it to a file.
+     *
+     * @param xml document to sign
+     * @param charset charset of the signed document
+     * @param path file to write the signed document to, replaced if it exists
+     * @return the hash and the path of the signed document
+     * @throws SigningException the document could not be signed
+     */
+    public SignResponseDto sign(final String xml,
+                                final Charset charset,
+                                final Path path)
+        throws SigningException
+    {
+        final String hash;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            hash = sign(xml, charset, new StreamResult(out));
+        } catch (final IOException e) {
+            throw new SigningException(e);
+        }
+        return SignResponseDto.builder()
+                        .withPath(path)
+                        .withHash(hash)
+                        .build();
+    }
+
+    /**
+     * Signs the document and returns it encoded with the given charset.
+     *
+     * @param xml document to sign
+     * @param charset charset of the signed document
+     * @return the signed document as bytes and its hash
+     * @throws SigningException the document could not be signed
+     */
+    public SignResponseDto signToBytes(final String xml,
+                                       final Charset charset)
+        throws SigningException
+    {
+        final var out = new ByteArrayOutputStream();
+        final var hash = sign(xml, charset, new StreamResult(out));
+        return SignResponseDto.builder()
+                        .withBytes(out.toByteArray())
+                        .withHash(hash)
+                        .build();
+    }
+
+    /**
+     * @param doc document to sign
+     * @param charset charset of the signed document
+     * @param formatted the document is signed as formatted output
+     * @return the signed document and its hash, <code>null</code> on error
+     * @see #sign(Document, Charset, boolean)
+     */
+    public SignResponseDto signDocument(final Document doc,
+                                        final Charset charset,
+                                        final boolean formatted)
+    {
+        SignResponseDto ret = null;
+        try {
+            ret = sign(doc, charset, formatted);
+        } catch (final SigningException e) {
+            LOG.error("Catched", e);
+        }
+        return ret;
+    }
+
+    /**
+     * Signs a document that was marshalled directly into a DOM, e.g. by
+     * <code>getUBLDocument()</code> of the documents. The given document is
+     * modified. For formatted documents line breaks are added as the
+     * formatted output of the marshaller would contain them, so the result is
+     * the same as signing the serialized document.
+     *
+     * @param doc document to sign
+     * @param charset charset of the signed document
+     * @param formatted the document is signed as formatted output
+     * @return the signed document and its hash
+     * @throws SigningException the document could not be signed
+     */
+    public SignResponseDto sign(final Document doc,
+                                final Charset charset,
+                                final boolean formatted)
+        throws SigningException
+    {
+        final var out = new StringWriter();
+        final var hash = sign(doc, charset, formatted, new StreamResult(out));
+        return SignResponseDto.builder()
+                        .withUbl(out.toString())
+                        .withHash(hash)
+                        .build();
+    }
+
+    /**
+     * Signs a document that was marshalled directly into a DOM and writes it
+     * to the stream. The stream is not closed.
+     *
+     * @param doc document to sign
+     * @param charset charset of the signed document
+     * @param formatted the document is signed as formatted output
+     * @param out stream to write the signed document to
+     * @return the hash of the signed document
+     * @throws SigningException the document could not be signed
+     * @see #sign(Document, Charset, boolean)
+     */
+    public SignResponseDto sign(final Document doc,
+                                final Charset charset,
+                                final boolean formatted,
+                                final OutputStream out)
+        throws SigningException
+    {
+        return SignResponseDto.builder()
+                        .withHash(sign(doc, charset, formatted, new StreamResult(out)))
+                        .build();
+    }
+
+    /**
+     * Signs all documents in parallel using the default batch settings.
+     *
+     * @param xmls documents to sign
+     * @return one response per document, in input order
+     * @see BatchSigner
+     */
+    public List<SignResponseDto> signAll(final Collection<String> xmls)
+    {
+        return BatchSigner.of(this).signAll(xmls);
+    }
+
+    /**
+     * Signs all documents in parallel using the default batch settings.
+     *
+     * @param xmls documents to sign
+     * @return one response per document, in input order
+     * @see BatchSigner
+     */
+    public List<SignResponseDto> signAll(final Stream<String> xmls)
+    {
+        return BatchSigner.of(this).signAll(xmls);
+    }
+
+    private String sign(final String xml,
+                        final Charset charset,
+                        final StreamResult result)
+        throws SigningException
+    {
+        try {
+            final var event = new SignEvent();
+            event.begin();
+            final String ret;
+            if (jaxbRoundTrip) {
+                final var start = Instrumentations.start();
+                final var signable = toSignable(xml, charset);
+                Instrumentations.phase(Phase.NORMALIZE, null, start);
+                ret = signPrepared(signable, charset, result, event, start);
+            } else {
+                final var tools = toolkit.get();
+                final var start = Instrumentations.start();
+                final var doc = tools.documentBuilder.parse(new InputSource(new StringReader(xml)));
+                final var documentType = getDocumentType(doc, event);
+                var time = Instrumentations.phase(Phase.PARSE, documentType, start);
+                WhitespaceNormalizer.normalize(doc);
+                final var nodeToSign = addExtension(doc);
+                time = Instrumentations.phase(Phase.NORMALIZE, documentType, time);
+                ret = signAndWrite(tools, doc, nodeToSign, charset, result, event, documentType, start, time);
+            }
+            return ret;
+        } catch (final NoSuchAlgorithmException | SAXException | IOException | InvalidAlgorithmParameterException
+                        | MarshalException | XMLSignatureException | XPathExpressionException | TransformerException
+                        | RuntimeException e) {
+            throw new SigningException(e);
+        }
+    }
+
+    private String sign(final Document doc,
+                        final Charset charset,
+                        final boolean formatted,
+                        final StreamResult result)
+        throws SigningException
+    {
+        try {
+            final var event = new SignEvent();
+            event.begin();
+            final var tools = toolkit.get();
+            final var start = Instrumentations.start();
+            final var documentType = getDocumentType(doc, event);
+            if (formatted) {
+                addLineBreaks(doc, doc.getDocumentElement());
+            }
+            WhitespaceNormalizer.normalize(doc);
+            final var nodeToSign = addExtension(doc);
+            final var time = Instrumentations.phase(Phase.NORMALIZE, documentType, start);
+            return signAndWrite(tools, doc, nodeToSign, charset, result, event, documentType, start, time);
+        } catch (final NoSuchAlgorithmException | InvalidAlgorithmParameterException | MarshalException
+                        | XMLSignatureException | XPathExpressionException | TransformerException
+                        | RuntimeException e) {
+            throw new SigningException(e);
+        }
+    }
+
+    public SignResponseDto signInvoice(final String xml)
+    {
+        SignResponseDto ret = null;
+        try {
+            final var invoice = DocumentMarshaller.invoice().read(xml);
+            addExtension(invoice.getUBLExtensions(), invoice::setUBLExtensions);
+            final var xml2 = DocumentMarshaller.invoice()
+                            .setCharset(StandardCharsets.UTF_8)
+                            .setUseSchema(false)
+                            .setFormattedOutput(true).getAsString(invoice);
+            final var out = new StringWriter();
+            final var event = new SignEvent();
+            event.begin();
+            final var hash = signPrepared(xml2, StandardCharsets.UTF_8, new StreamResult(out), event,
+                            Instrumentations.start());
+            ret = SignResponseDto.builder()
+                            .withUbl(out.toString())
+                            .withHash(hash)
+                            .build();
+        } catch (final NoSuchAlgorithmException | SAXException | IOException | InvalidAlgorithmParameterException
+                        | MarshalException | XMLSignatureException | XPathExpressionException | TransformerException e) {
+            LOG.error("Catched", e);
+        }
+        return ret;
+    }
+
+    /**
+     * Reads the document and writes it again with an empty UBLExtension that
+     * will receive the signature.
+     */
+    private String toSignable(final String xml,
+                              final Charset charset)
+    {
+        final String ret;
+        if (xml.contains("<CreditNote ")) {
+            final var creditNote = DocumentMarshaller.creditNote().read(xml);
+            addExtension(creditNote.getUBLExtensions(), creditNote::setUBLExtensions);
+            ret = DocumentMarshaller.creditNote()
+                            .setCharset(charset)
+                            .setUseSchema(false)
+                            .setFormattedOutput(true).getAsString(creditNote);
+        } else if (xml.contains("<DespatchAdvice ")) {
+            final var deliveryNote = DocumentMarshaller.deliveryNote().read(xml);
+            addExtension(deliveryNote.getUBLExtensions(), deliveryNote::setUBLExtensions);
+            ret = DocumentMarshaller.deliveryNote()
+                            .setCharset(charset)
+                            .setUseSchema(false)
+                            .setFormattedOutput(true)
+                            .getAsString(deliveryNote);
+        } else if (xml.contains("<SummaryDocuments ")) {
+            final var summary = DocumentMarshaller.summary().read(xml);
+            addExtension(summary.getUBLExtensions(), summary::setUBLExtensions);
+            ret = DocumentMarshaller.summary()
+                            .setCharset(charset)
+                            .setUseSchema(false)
+                            .setFormattedOutput(true)
+                            .getAsString(summary);
+        } else {
+            final var invoice = DocumentMarshaller.invoice().read(xml);
+            addExtension(invoice.getUBLExtensions(), invoice::setUBLExtensions);
+            ret = DocumentMarshaller.invoice()
+                            .setCharset(charset)
+                            .setUseSchema(false)
+                            .setFormattedOutput(true).getAsString(invoice);
+        }
+        return ret;
+    }
+
+    private void addExtension(final UBLExtensionsType extensions,
+                              final Consumer<UBLExtensionsType> setter)
+    {
+        var ublExtensions = extensions;
+        if (ublExtensions == null) {
+            ublExtensions = new UBLExtensionsType();
+            setter.accept(ublExtensions);
+        }
+        final var extension = new UBLExtensionType();
+        extension.setExtensionContent(new ExtensionContentType());
+        ublExtensions.addUBLExtension(extension);
+    }
+
+    private String signPrepared(final String xml,
+                                final Charset charset,
+                                final StreamResult result,
+                                final SignEvent event,
+                                final long start)
+        throws SAXException, IOException, XPathExpressionException, NoSuchAlgorithmException,
+        InvalidAlgorithmParameterException, MarshalException, XMLSignatureException, TransformerException
+    {
+        final var tools = toolkit.get();
+        var time = Instrumentations.start();
+        final var doc = tools.documentBuilder.parse(new ByteArrayInputStream(xml.getBytes(charset)));
+        final var documentType = getDocumentType(doc, event);
+        time = Instrumentations.phase(Phase.PARSE, documentType, time);
+        WhitespaceNormalizer.normalize(doc);
+        final var nodeToSign = (Node) tools.nodeToSign.evaluate(doc, XPathConstants.NODE);
+        time = Instrumentations.phase(Phase.NORMALIZE, documentType, time);
+        return signAndWrite(tools, doc, nodeToSign, charset, result, event, documentType, start, time);
+    }
+
+    /**
+     * Signs the prepared document, writes it, reports both phases and the
+     * signed document to the {@link Instrumentations} and commits the
+     * {@link SignEvent}.
+     *
+     * @return the base64 encoded digest of the document
+     */
+    private String signAndWrite(final Toolkit tools,
+                                final Document doc,
+                                final Node nodeToSign,
+                                final Charset charset,
+                                final StreamResult result,
+                                final SignEvent event,
+                                final DocumentType documentType,
+                                final long start,
+                                final long time)
+        throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, MarshalException,
+        XMLSignatureException, XPathExpressionException, TransformerException
+    {
+        final var ret = sign(tools, doc, nodeToSign);
+        final var signed = Instrumentations.phase(Phase.SIGN, documentType, time);
+        final var enabled = Instrumentations.isEnabled();
+        final var bytes = write(tools, doc, charset, result, enabled || event.isEnabled());
+        Instrumentations.phase(Phase.SERIALIZE, documentType, signed);
+        event.end();
+        if (enabled || event.shouldCommit()) {
+            final var lines = getLineCount(doc);
+            if (enabled) {
+                Instrumentations.document(Operation.SIGN, documentType, lines, bytes, start);
+            }
+            event.commit(getNumber(doc), documentType, lines, bytes);
+        }
+        return ret;
+    }
+
+    /**
+     * @return the type of the document, <code>null</code> if unknown or
+     *         neither instrumentation nor the event are enabled
+     */
+    private DocumentType getDocumentType(final Document doc,
+                                         final SignEvent event)
+    {
+        DocumentType ret = null;
+        if (Instrumentations.isEnabled() || event.isEnabled()) {
+            final var root = doc.getDocumentElement();
+            ret = DocumentType.of(new QName(root.getNamespaceURI(), root.getLocalName()));
+        }
+        return ret;
+    }
+
+    /**
+     * @return the value of the <code>cbc:ID</code> of the root element
+     */
+    private String getNumber(final Document doc)
+    {
+        String ret = null;
+        for (var child = doc.getDocumentElement().getFirstChild(); child != null && ret == null;
+                        child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE && "ID".equals(child.getLocalName())
+                            && CUBL21.XML_SCHEMA_CBC_NAMESPACE_URL.equals(child.getNamespaceURI())) {
+                ret = child.getTextContent();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Counts the lines, e.g. <code>cac:InvoiceLine</code> or
+     * <code>sac:SummaryDocumentsLine</code>, which are direct children of the
+     * root element.
+     */
+    private int getLineCount(final Document doc)
+    {
+        var ret = 0;
+        for (var child = doc.getDocumentElement().getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE && child.getLocalName() != null
+                            && child.getLocalName().endsWith("Line")) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Adds a line break before each child element and before the end tag of
+     * elements that contain other elements.
+     */
+    private void addLineBreaks(final Document doc,
+                               final Element element)
+    {
+        var child = element.getFirstChild();
+        var hasElements = false;
+        while (child != null) {
+            final var next = child.getNextSibling();
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                hasElements = true;
+                element.insertBefore(doc.createTextNode("\n"), child);
+                addLineBreaks(doc, (Element) child);
+            }
+            child = next;
+        }
+        if (hasElements) {
+            element.appendChild(doc.createTextNode("\n"));
+        }
+    }
+
+    /**
+     * Adds an empty <code>ext:UBLExtension</code> directly in the DOM, at the
+     * same place and with the same line breaks as the marshaller would put
+     * it, so that the result does not differ from the JAXB round trip.
+     *
+     * @param doc document to add the extension to
+     * @return the first <code>ext:ExtensionContent</code>, that receives the
+     *         signature
+     */
+    private Element addExtension(final Document doc)
+    {
+        final var root = doc.getDocumentElement();
+        final var formatted = root.getFirstChild() != null && root.getFirstChild().getNodeType() == Node.TEXT_NODE;
+        Element extensions = null;
+        Element firstElement = null;
+        for (var child = root.getFirstChild(); child != null && firstElement == null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                firstElement = (Element) child;
+            }
+        }
+        if (firstElement != null && isExtensionElement(firstElement, "UBLExtensions")) {
+            extensions = firstElement;
+        } else {
+            extensions = doc.createElementNS(CUBL21.XML_SCHEMA_CEC_NAMESPACE_URL, "ext:UBLExtensions");
+            root.insertBefore(extensions, firstElement);
+            if (formatted) {
+                root.insertBefore(doc.createTextNode("\n"), firstElement);
+                extensions.appendChild(doc.createTextNode("\n"));
+            }
+        }
+        final var extension = doc.createElementNS(CUBL21.XML_SCHEMA_CEC_NAMESPACE_URL, "ext:UBLExtension");
+        final var content = doc.createElementNS(CUBL21.XML_SCHEMA_CEC_NAMESPACE_URL, "ext:ExtensionContent");
+        if (formatted) {
+            extension.appendChild(doc.createTextNode("\n"));
+            extension.appendChild(content);
+            extension.appendChild(doc.createTextNode("\n"));
+        } else {
+            extension.appendChild(content);
+        }
+        extensions.appendChild(extension);
+        if (formatted) {
+            extensions.appendChild(doc.createTextNode("\n"));
+        }
+        // the signature goes into the first content, as for the JAXB round
+        // trip that selects it with XPATH_NODE_TO_SIGN
+        return getFirstExtensionContent(extensions);
+    }
+
+    private Element getFirstExtensionContent(final Element extensions)
+    {
+        for (var extension = extensions.getFirstChild(); extension != null; extension = extension.getNextSibling()) {
+            if (isExtensionElement(extension, "UBLExtension")) {
+                for (var child = extension.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    if (isExtensionElement(child, "ExtensionContent")) {
+                        return (Element) child;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isExtensionElement(final Node node,
+                                       final String localName)
+    {
+        return node.getNodeType() == Node.ELEMENT_NODE
+                        && CUBL21.XML_SCHEMA_CEC_NAMESPACE_URL.equals(node.getNamespaceURI())
+                        && localName.equals(node.getLocalName());
+    }
+
+    /**
+     * Signs the document in place.
+     *
+     * @return the base64 encoded digest of the document
+     */
+    private String sign(final Toolkit tools,
+                        final Document doc,
+                        final Node nodeToSign)
+        throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, MarshalException,
+        XMLSignatureException, XPathExpressionException
+    {
+        final var factory = tools.signatureFactory;
+        // transforms keep a reference to the document they were applied to
+        // and therefore must not be reused
+        final var ref = factory.newReference("", tools.digestMethod,
+                        Collections.singletonList(factory.newTransform(TRANSFORM, (TransformParameterSpec) null)),
+                        null, null);
+        final var signedInfo = factory.newSignedInfo(
+                        factory.newCanonicalizationMethod(CANONICALIZATION_METHOD, (C14NMethodParameterSpec) null),
+                        tools.signatureMethod, Collections.singletonList(ref));
+
+        // key and certificate of the same entry, even if the keystore is
+        // reloaded meanwhile
+        final var entry = keyEntry.get();
+        final DOMSignContext dsc = new DOMSignContext(entry.getPrivateKey(), nodeToSign);
+        final XMLSignature signature = factory.newXMLSignature(signedInfo,
+                        tools.getKeyInfo((X509Certificate) entry.getCertificate()));
+        dsc.setDefaultNamespacePrefix("ds");
+        signature.sign(dsc);
+
+        final var hash = signature.getSignedInfo().getReferences().get(0).getDigestValue();
+
+        final var idReference = (String) tools.signReference.evaluate(doc, XPathConstants.STRING);
+        final Element elementParent = (Element) dsc.getParent();
+        if (idReference != null && elementParent.getElementsByTagName("ds:Signature") != null) {
+            final Element elementSignature = (Element) elementParent.getElementsByTagName("ds:Signature").item(0);
+            elementSignature.setAttribute("Id", idReference);
+        }
+
+        return Base64.getEncoder().encodeToString(hash);
+    }
+
+    /**
+     * @return the number of bytes written if counted, else 0
+     */
+    private long write(final Toolkit tools,
+                       final Document doc,
+                       final Charset charset,
+                       final StreamResult result,
+                       final boolean count)
+        throws TransformerException
+    {
+        final var transformer = tools.transformer;
+        transformer.reset();
+        transformer.setOutputProperty("encoding", charset.displayName());
+        long ret = 0;
+        if (count) {
+            if (result.getOutputStream() != null) {
+                final var counting = new CountingOutputStream(result.getOutputStream());
+                transformer.transform(new DOMSource(doc), new StreamResult(counting));
+                ret = counting.count;
+            } else if (result.getWriter() instanceof StringWriter) {
+                final var buffer = ((StringWriter) result.getWriter()).getBuffer();
+                final var offset = buffer.length();
+                transformer.transform(new DOMSource(doc), result);
+                ret = Instrumentations.byteSize(buffer.subSequence(offset, buffer.length()), charset);
+            } else {
+                transformer.transform(new DOMSource(doc), result);
+            }
+        } else {
+            transformer.transform(new DOMSource(doc), result);
+        }
+        return ret;
+    }
+
+    /**
+     * Creates a new engine for the given configuration.
+     *
+     * @param signing configuration containing the keystore settings
+     * @return new engine
+     */
+    /**
+     * @param signing the signing configuration
+     * @param methodName name of a method without parameters
+     * @return the class of the signing or one of its super classes below
+     *         {@link Signing} declares the method
+     */
+    private static boolean overrides(final Signing signing,
+                                     final String methodName)
+    {
+        for (Class<?> clazz = signing.getClass(); clazz != Signing.class; clazz = clazz.getSuperclass()) {
+            try {
+                clazz.getDeclaredMethod(methodName);
+                return true;
+            } catch (final NoSuchMethodException e) {
+                // check the super class
+            }
+        }
+        return false;
+    }
+
+    public static SigningEngine of(final Signing signing)
+    {
+        return new SigningEngine(signing);
+    }
+
+    /**
+     * Objects confined to one thread.
+     */
+    private static final class Toolkit
+    {
+
+        private final DocumentBuilder documentBuilder;
+        private final XPathExpression nodeToSign;
+        private final XPathExpression signReference;
+        private final Transformer transformer;
+        private final XMLSignatureFactory signatureFactory;
+        private final DigestMethod digestMethod;
+        private final SignatureMethod signatureMethod;
+
+        private X509Certificate certificate;
+        private KeyInfo keyInfo;
+
+        private Toolkit()
+        {
+            try {
+                final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+                dbf.setNamespaceAware(true);
+                // the xml comes from the caller, as for the JAXB unmarshaller
+                // no DOCTYPE and therefore no external entities are allowed
+                dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+                dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+                dbf.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+                dbf.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+                dbf.setExpandEntityReferences(false);
+                documentBuilder = dbf.newDocumentBuilder();
+                // report parse errors by exception only instead of printing them
+                documentBuilder.setErrorHandler(new DefaultHandler());
+
+                final XPath xPath = XPathFactory.newInstance().newXPath();
+                xPath.setNamespaceContext(new MapBasedNamespaceContext()
+                                .addMapping("ext", CUBL21.XML_SCHEMA_CEC_NAMESPACE_URL)
+                                .addMapping("cac", CUBL21.XML_SCHEMA_CAC_NAMESPACE_URL)
+                                .addMapping("cbc", CUBL21.XML_SCHEMA_CBC_NAMESPACE_URL));
+                nodeToSign = xPath.compile(XPATH_NODE_TO_SIGN);
+                signReference = xPath.compile(XPATH_SIGN_REFERENCE);
+
+                transformer = TransformerFactory.newInstance().newTransformer();
+
+                signatureFactory = XMLSignatureFactory.getInstance("DOM");
+                digestMethod = signatureFactory.newDigestMethod(DIGEST_METHOD, null);
+                signatureMethod = signatureFactory.newSignatureMethod(SIGNATURE_METHOD, null);
+            } catch (final ParserConfigurationException | XPathExpressionException
+                            | TransformerConfigurationException | NoSuchAlgorithmException
+                            | InvalidAlgorithmParameterException e) {
+                throw new IllegalStateException("Could not initialize signing engine", e);
+            }
+        }
+
+        private KeyInfo getKeyInfo(final X509Certificate cert)
+        {
+            if (keyInfo == null || certificate != cert) {
+                final var x509Content = new ArrayList<>();
+                x509Content.add(cert.getSubjectX500Principal().getName());
+                x509Content.add(cert);
+                final var keyInfoFactory = signatureFactory.getKeyInfoFactory();
+                keyInfo = keyInfoFactory.newKeyInfo(
+                                Collections.singletonList(keyInfoFactory.newX509Data(x509Content)));
+                certificate = cert;
+            }
+            return keyInfo;
+        }
+    }
+
+    /**
+     * Counts the bytes written to the wrapped stream, which is not closed.
+     */
+    private static final class CountingOutputStream
+        extends FilterOutputStream
+    {
+
+        private long count;
+
+        private CountingOutputStream(final OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b)
+            throws IOException
+        {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b,
+                          final int off,
+                          final int len)
+            throws IOException
+        {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close()
+            throws IOException
+        {
+            flush();
+        }
+    }
+}
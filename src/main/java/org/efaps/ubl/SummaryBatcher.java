@@ -0,0 +1,217 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.efaps.ubl.documents.elements.Summary;
+import org.efaps.ubl.documents.interfaces.ISummaryLine;
+import org.efaps.ubl.documents.interfaces.ISupplier;
+import org.efaps.ubl.dto.SignResponseDto;
+import org.efaps.ubl.dto.SummaryDocumentDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Splits the lines of a day into as many summaries as needed to stay within
+ * the maximum number of lines SUNAT accepts per summary. The lines are read
+ * lazily and each summary is numbered, marshalled and optionally signed as
+ * soon as it is full, so only the lines of one summary are held in memory.
+ * The summaries are numbered <code>RC-&lt;issue date&gt;-&lt;correlative&gt;</code>,
+ * e.g. <code>RC-20230228-1</code>, <code>RC-20230228-2</code>.
+ *
+ * <pre>
+ * SummaryBatcher.of(supplier, referenceDate)
+ *                 .withSigningEngine(signing.getEngine())
+ *                 .createAll(lines, summary -&gt; send(summary));
+ * </pre>
+ */
+public final class SummaryBatcher
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger(SummaryBatcher.class);
+
+    /** Maximum number of lines per summary accepted by SUNAT. */
+    public static final int DEFAULT_MAX_LINES = 500;
+
+    private static final DateTimeFormatter NUMBER_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final ISupplier supplier;
+    private final LocalDate referenceDate;
+    private LocalDate issueDate;
+    private int maxLines = DEFAULT_MAX_LINES;
+    private int firstCorrelative = 1;
+    private SigningEngine engine;
+    private Charset encoding = StandardCharsets.UTF_8;
+
+    private SummaryBatcher(final ISupplier supplier,
+                           final LocalDate referenceDate)
+    {
+        this.supplier = supplier;
+        this.referenceDate = referenceDate;
+        issueDate = LocalDate.now();
+    }
+
+    /**
+     * @param issueDate date the summaries are generated, used for their
+     *            number, default today
+     * @return this
+     */
+    public SummaryBatcher withIssueDate(final LocalDate issueDate)
+    {
+        this.issueDate = issueDate;
+        return this;
+    }
+
+    /**
+     * @param maxLines maximum number of lines per summary, default
+     *            {@link #DEFAULT_MAX_LINES}
+     * @return this
+     */
+    public SummaryBatcher withMaxLines(final int maxLines)
+    {
+        if (maxLines < 1) {
+            throw new IllegalArgumentException("maxLines must be positive");
+        }
+        this.maxLines = maxLines;
+        return this;
+    }
+
+    /**
+     * @param firstCorrelative correlative of the first summary, e.g. to
+     *            continue after summaries already sent the same day, default
+     *            1
+     * @return this
+     */
+    public SummaryBatcher withFirstCorrelative(final int firstCorrelative)
+    {
+        if (firstCorrelative < 1) {
+            throw new IllegalArgumentException("firstCorrelative must be positive");
+        }
+        this.firstCorrelative = firstCorrelative;
+        return this;
+    }
+
+    /**
+     * @param engine engine to sign each summary with, <code>null</code> to
+     *            not sign them
+     * @return this
+     */
+    public SummaryBatcher withSigningEngine(final SigningEngine engine)
+    {
+        this.engine = engine;
+        return this;
+    }
+
+    public SummaryBatcher withEncoding(final Charset encoding)
+    {
+        this.encoding = encoding;
+        return this;
+    }
+
+    public int createAll(final Stream<? extends ISummaryLine> lines,
+                         final Consumer<SummaryDocumentDto> consumer)
+    {
+        return createAll(lines.iterator(), consumer);
+    }
+
+    /**
+     * Creates the summaries for all lines and passes each one to the
+     * consumer as soon as it is complete.
+     *
+     * @param lines lines of the summaries, in the order they are numbered
+     * @param consumer receives the summaries in the order of their numbers
+     * @return number of summaries created
+     */
+    public int createAll(final Iterator<? extends ISummaryLine> lines,
+                         final Consumer<SummaryDocumentDto> consumer)
+    {
+        var correlative = firstCorrelative;
+        final List<ISummaryLine> batch = new ArrayList<>(Math.min(maxLines, DEFAULT_MAX_LINES));
+        while (lines.hasNext()) {
+            batch.add(lines.next());
+            if (batch.size() == maxLines) {
+                consumer.accept(create(batch, correlative++));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            consumer.accept(create(batch, correlative++));
+        }
+        return correlative - firstCorrelative;
+    }
+
+    /**
+     * Creates the summaries for all lines.
+     *
+     * @param lines lines of the summaries
+     * @return the summaries in the order of their numbers
+     */
+    public List<SummaryDocumentDto> createAll(final Stream<? extends ISummaryLine> lines)
+    {
+        final var ret = new ArrayList<SummaryDocumentDto>();
+        createAll(lines, ret::add);
+        return ret;
+    }
+
+    private SummaryDocumentDto create(final List<ISummaryLine> lines,
+                                      final int correlative)
+    {
+        final var number = "RC-" + NUMBER_DATE.format(issueDate) + "-" + correlative;
+        final var summary = new Summary()
+                        .setNumber(number)
+                        .setReferenceDate(referenceDate)
+                        .setIssueDate(issueDate)
+                        .setSupplier(supplier)
+                        .setLines(new ArrayList<>(lines));
+        summary.setEncoding(encoding);
+        final var ubl = summary.getUBLXml();
+        SignResponseDto signResponse = null;
+        if (engine != null) {
+            try {
+                signResponse = engine.sign(ubl, encoding);
+            } catch (final SigningException e) {
+                LOG.debug("Could not sign summary {}", number, e);
+                signResponse = SignResponseDto.builder().withError(e).build();
+            }
+        }
+        return SummaryDocumentDto.builder()
+                        .withNumber(number)
+                        .withLineCount(lines.size())
+                        .withUbl(ubl)
+                        .withSignResponse(signResponse)
+                        .build();
+    }
+
+    /**
+     * @param supplier supplier issuing the summaries
+     * @param referenceDate date of the documents in the summaries
+     * @return new batcher
+     */
+    public static SummaryBatcher of(final ISupplier supplier,
+                                    final LocalDate referenceDate)
+    {
+        return new SummaryBatcher(supplier, referenceDate);
+    }
+}
@@ -15,149 +15,295 @@
  */
 package org.efaps.ubl;
 
-import java.math.BigDecimal;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
 
 import org.efaps.ubl.documents.elements.Summary;
-import org.efaps.ubl.documents.interfaces.ICustomer;
-import org.efaps.ubl.documents.interfaces.ISummaryLine;
-import org.efaps.ubl.documents.interfaces.ITaxEntry;
+import org.efaps.ubl.documents.elements.SummaryLine;
+import org.efaps.ubl.documents.elements.SummaryLineReader;
+import org.efaps.ubl.instrumentation.Instrumentations;
+import org.efaps.ubl.instrumentation.Phase;
 import org.efaps.ubl.marshaller.DocumentMarshaller;
+import org.efaps.ubl.marshaller.DocumentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import oasis.names.specification.ubl.schema.xsd.invoice_21.InvoiceType;
 
+/**
+ * Creates a summary out of receipts. Each receipt is read once and only the
+ * values needed by the summary are kept in a {@link SummaryLine}, so that
+ * summaries of many receipts can be created from files or streams without
+ * keeping the receipts in memory. The values are extracted by the
+ * {@link SummaryLineReader} without unmarshalling the receipts.
+ * <p>
+ * With a parallelism greater than one or an executor the receipts are read
+ * in parallel and the summary converts its lines in parallel. The lines keep
+ * the order of the input in both cases.
+ * </p>
+ *
+ * <pre>
+ * final var summary = new SummaryService()
+ *                 .withParallelism(Runtime.getRuntime().availableProcessors())
+ *                 .createSummary(paths);
+ * </pre>
+ */
 public class SummaryService
 {
 
-    public Summary createSummary(String... xmls)
+    private static final Logger LOG = LoggerFactory.getLogger(SummaryService.class);
+
+    private boolean fullUnmarshal;
+    private ExecutorService executor;
+    private int parallelism = 1;
+    private int maxInFlight;
+
+    /**
+     * Compatibility switch: unmarshal each receipt completely with JAXB, as
+     * earlier versions did, instead of extracting only the needed values.
+     *
+     * @param fullUnmarshal unmarshal the receipts
+     * @return this
+     */
+    public SummaryService withFullUnmarshal(final boolean fullUnmarshal)
     {
-        final var summary = new Summary();
-        for (final var xml : xmls) {
-            final var invoice = DocumentMarshaller.invoice().read(xml);
-            summary.addLine(new ISummaryLine()
-            {
-
-                @Override
-                public String getDocType()
-                {
-                    return invoice.getInvoiceTypeCodeValue();
-                }
+        this.fullUnmarshal = fullUnmarshal;
+        return this;
+    }
 
-                @Override
-                public String getNumber()
-                {
-                    return invoice.getIDValue();
-                }
+    /**
+     * Executor that reads the receipts, e.g. a fixed pool or a
+     * <code>ForkJoinPool</code>. The executor belongs to the caller and is not
+     * shut down. If none is given and the parallelism is greater than one, a
+     * fixed pool of {@link #withParallelism(int)} threads is used for each
+     * summary.
+     *
+     * @param executor executor to use
+     * @return this
+     */
+    public SummaryService withExecutor(final ExecutorService executor)
+    {
+        this.executor = executor;
+        return this;
+    }
 
-                @Override
-                public ICustomer getCustomer()
-                {
-                    return new ICustomer()
-                    {
-
-                        @Override
-                        public String getDoiType()
-                        {
-                            return invoice.getAccountingCustomerParty().getParty().getPartyIdentificationAtIndex(0)
-                                            .getID().getSchemeID();
-                        }
+    /**
+     * @param parallelism number of receipts read at the same time, default 1
+     * @return this
+     */
+    public SummaryService withParallelism(final int parallelism)
+    {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
 
-                        @Override
-                        public String getDOI()
-                        {
-                            return invoice.getAccountingCustomerParty().getParty().getPartyIdentificationAtIndex(0)
-                                            .getID().getValue();
-                        }
+    /**
+     * @param maxInFlight maximum number of receipts submitted but not yet
+     *            read, default four times the parallelism
+     * @return this
+     */
+    public SummaryService withMaxInFlight(final int maxInFlight)
+    {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
 
-                        @Override
-                        public String getName()
-                        {
-                            return invoice.getAccountingCustomerParty().getParty().getPartyLegalEntityAtIndex(0)
-                                            .getRegistrationNameValue();
-                        }
+    public Summary createSummary(String... xmls)
+    {
+        return createSummary(Arrays.asList(xmls).iterator(), (xml, idx) -> {
+            final var start = Instrumentations.start();
+            SummaryLine line = null;
+            if (fullUnmarshal) {
+                line = toLine(DocumentMarshaller.invoice().read(xml));
+            } else {
+                try {
+                    line = SummaryLineReader.read(xml);
+                } catch (final XMLStreamException e) {
+                    LOG.error("Catched", e);
+                }
+            }
+            Instrumentations.phase(Phase.SUMMARY_PARSE, DocumentType.INVOICE, start);
+            return verify(line, "receipt " + idx);
+        });
+    }
 
-                        @Override
-                        public String getAddressLine()
-                        {
-                            return null;
-                        }
+    /**
+     * Creates a summary reading the receipts from files.
+     *
+     * @param paths files of the receipts
+     * @return new summary with one line per receipt in the order of the
+     *         stream
+     * @throws UncheckedIOException a file could not be read
+     * @throws IllegalArgumentException a file is not a valid receipt
+     */
+    public Summary createSummary(final Stream<Path> paths)
+    {
+        return createSummary(paths.iterator(), (path, idx) -> {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+                return read(in, path.toString());
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
 
-                        @Override
-                        public String getCountry()
-                        {
-                            return null;
+    /**
+     * Creates a summary reading the receipts from streams. Each stream is
+     * closed after it was read.
+     *
+     * @param inputStreams streams of the receipts
+     * @return new summary with one line per receipt in the order of the
+     *         iterator
+     * @throws UncheckedIOException a stream could not be closed
+     * @throws IllegalArgumentException a stream does not contain a valid
+     *             receipt
+     */
+    public Summary createSummary(final Iterator<InputStream> inputStreams)
+    {
+        return createSummary(inputStreams, (inputStream, idx) -> {
+            try (InputStream in = inputStream) {
+                return read(in, "receipt " + idx);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private <T> Summary createSummary(final Iterator<T> inputs,
+                                      final Reader<T> reader)
+    {
+        final var summary = new Summary();
+        if (executor == null && parallelism == 1) {
+            var idx = 0;
+            while (inputs.hasNext()) {
+                summary.addLine(reader.read(inputs.next(), idx++));
+            }
+        } else {
+            summary.setParallel(true);
+            for (final var line : readParallel(inputs, reader)) {
+                summary.addLine(line);
+            }
+        }
+        return summary;
+    }
+
+    private <T> List<SummaryLine> readParallel(final Iterator<T> inputs,
+                                               final Reader<T> reader)
+    {
+        final var executorService = executor == null ? Executors.newFixedThreadPool(parallelism) : executor;
+        final var permits = new Semaphore(maxInFlight < 1 ? parallelism * 4 : maxInFlight);
+        final List<Future<SummaryLine>> futures = new ArrayList<>();
+        try {
+            var idx = 0;
+            while (inputs.hasNext()) {
+                final var input = inputs.next();
+                final var current = idx++;
+                permits.acquireUninterruptibly();
+                try {
+                    futures.add(executorService.submit(() -> {
+                        try {
+                            return reader.read(input, current);
+                        } finally {
+                            permits.release();
                         }
-                    };
+                    }));
+                } catch (final RuntimeException e) {
+                    permits.release();
+                    throw e;
                 }
+            }
+            final List<SummaryLine> ret = new ArrayList<>(futures.size());
+            for (final var future : futures) {
+                ret.add(await(future));
+            }
+            return ret;
+        } catch (final RuntimeException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        } finally {
+            if (executor == null) {
+                executorService.shutdown();
+            }
+        }
+    }
 
-                @Override
-                public BigDecimal getCrossTotal()
-                {
-                    return invoice.getLegalMonetaryTotal().getPayableAmountValue();
-                }
+    private SummaryLine await(final Future<SummaryLine> future)
+    {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading receipts", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
 
-                @Override
-                public BigDecimal getNetTotal()
-                {
-                    return invoice.getLegalMonetaryTotal().getTaxExclusiveAmountValue();
-                }
+    private SummaryLine read(final InputStream in,
+                             final String source)
+    {
+        final var start = Instrumentations.start();
+        SummaryLine line = null;
+        if (fullUnmarshal) {
+            line = toLine(DocumentMarshaller.invoice().read(in));
+        } else {
+            try {
+                line = SummaryLineReader.read(in);
+            } catch (final XMLStreamException e) {
+                LOG.error("Catched", e);
+            }
+        }
+        Instrumentations.phase(Phase.SUMMARY_PARSE, DocumentType.INVOICE, start);
+        return verify(line, source);
+    }
 
-                @Override
-                public List<ITaxEntry> getTaxEntries()
-                {
-                    final var entries = new ArrayList<ITaxEntry>();
-                    for (final var taxtotal : invoice.getTaxTotal()) {
-                        entries.add(new ITaxEntry()
-                        {
-
-                            @Override
-                            public BigDecimal getTaxableAmount()
-                            {
-                                return taxtotal.getTaxSubtotalAtIndex(0).getTaxableAmountValue();
-                            }
-
-                            @Override
-                            public String getTaxExemptionReasonCode()
-                            {
-                                return taxtotal.getTaxSubtotalAtIndex(0).getTaxCategory()
-                                                .getTaxExemptionReasonCodeValue();
-                            }
-
-                            @Override
-                            public BigDecimal getPercent()
-                            {
-                                return null;
-                            }
-
-                            @Override
-                            public String getName()
-                            {
-                                return taxtotal.getTaxSubtotalAtIndex(0).getTaxCategory().getTaxScheme().getNameValue();
-                            }
-
-                            @Override
-                            public String getId()
-                            {
-                                return taxtotal.getTaxSubtotalAtIndex(0).getTaxCategory().getTaxScheme().getIDValue();
-                            }
-
-                            @Override
-                            public String getCode()
-                            {
-                                return taxtotal.getTaxSubtotalAtIndex(0).getTaxCategory().getTaxScheme()
-                                                .getTaxTypeCodeValue();
-                            }
-
-                            @Override
-                            public BigDecimal getAmount()
-                            {
-                                return taxtotal.getTaxAmountValue();
-                            }
-                        });
-                    }
-                    return entries;
-                }
-            });
+    private SummaryLine toLine(final InvoiceType invoice)
+    {
+        return invoice == null ? null : SummaryLine.of(invoice);
+    }
+
+    private SummaryLine verify(final SummaryLine line,
+                               final String source)
+    {
+        if (line == null) {
+            throw new IllegalArgumentException("Could not read receipt from " + source);
         }
-        return summary;
+        return line;
+    }
+
+    /**
+     * Reads the summary line of one receipt.
+     */
+    @FunctionalInterface
+    private interface Reader<T>
+    {
+
+        SummaryLine read(T input,
+                         int idx);
     }
 }
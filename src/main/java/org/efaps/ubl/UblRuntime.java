@@ -0,0 +1,237 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.efaps.ubl.documents.Invoice;
+import org.efaps.ubl.documents.elements.Customer;
+import org.efaps.ubl.documents.elements.Line;
+import org.efaps.ubl.documents.elements.Supplier;
+import org.efaps.ubl.documents.elements.Taxes;
+import org.efaps.ubl.marshaller.DocumentMarshaller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Initializes the expensive parts of the library in advance, so that the
+ * first document after a start does not pay for them.
+ *
+ * <pre>
+ * UblRuntime.warmUpAsync(signing).thenAccept(report -&gt; LOG.info("UBL ready: {}", report));
+ * </pre>
+ */
+public final class UblRuntime
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger(UblRuntime.class);
+
+    private UblRuntime()
+    {
+    }
+
+    /**
+     * Creates the JAXB contexts and compiles the schemas of all document
+     * types.
+     *
+     * @return the time each phase took
+     */
+    public static Report warmUp()
+    {
+        return warmUp(null);
+    }
+
+    /**
+     * Creates the JAXB contexts, compiles the schemas of all document types,
+     * loads the key of the given signing configuration and generates and
+     * signs a dummy invoice to initialize the XMLDSig provider.
+     * <p>
+     * The engine keeps its parser, XPath expressions and transformer per
+     * thread, they are created only for the thread running the warm-up. The
+     * threads signing the documents still create their own on first use.
+     * </p>
+     *
+     * @param signing signing configuration, <code>null</code> to skip the
+     *            signing phases
+     * @return the time each phase took
+     */
+    public static Report warmUp(final Signing signing)
+    {
+        final var report = new Report();
+        final List<DocumentMarshaller<?>> marshallers = List.of(DocumentMarshaller.invoice(),
+                        DocumentMarshaller.creditNote(), DocumentMarshaller.deliveryNote(),
+                        DocumentMarshaller.applicationResponse(), DocumentMarshaller.summary());
+        report.run("jaxb", () -> {
+            for (final var marshaller : marshallers) {
+                marshaller.getSharedContext();
+            }
+        });
+        report.run("schemas", () -> {
+            for (final var marshaller : marshallers) {
+                marshaller.getSchema();
+            }
+        });
+        if (signing != null) {
+            report.run("keystore", () -> {
+                if (signing.getKeyEntry() == null) {
+                    throw new IllegalStateException("Could not load key");
+                }
+            });
+            report.run("sign", () -> {
+                final var xml = getDummy().getUBLXml();
+                if (xml == null) {
+                    throw new IllegalStateException("Could not generate the dummy invoice");
+                }
+                signing.getEngine().sign(xml, StandardCharsets.UTF_8);
+            });
+        }
+        LOG.info("Warm-up finished: {}", report);
+        return report;
+    }
+
+    /**
+     * Runs {@link #warmUp(Signing)} in the background, on a thread of the
+     * common pool.
+     *
+     * @param signing signing configuration, <code>null</code> to skip the
+     *            signing phases
+     * @return future completed with the report
+     */
+    public static CompletableFuture<Report> warmUpAsync(final Signing signing)
+    {
+        return CompletableFuture.supplyAsync(() -> warmUp(signing));
+    }
+
+    /**
+     * @return a minimal invoice that is valid against the schema
+     */
+    private static Invoice getDummy()
+    {
+        final var supplier = new Supplier();
+        supplier.setCountry("PE");
+        supplier.setAnexo("0000");
+        supplier.setDOI("20000000001");
+        supplier.setDoiType("6");
+        supplier.setName("warm-up");
+        supplier.withGeoLocationId("150101");
+        supplier.setDistrict("Lima");
+        supplier.setAddressLine("warm-up");
+        final var customer = new Customer();
+        customer.setCountry("PE");
+        customer.setDOI("00000000");
+        customer.setDoiType("1");
+        customer.setName("warm-up");
+        customer.setAddressLine("warm-up");
+        return new Invoice()
+                        .withSupplier(supplier)
+                        .withCustomer(customer)
+                        .withCurrency("PEN")
+                        .withNumber("F000-000000")
+                        .withDate(LocalDate.of(2020, 1, 1))
+                        .withNetTotal(new BigDecimal("100"))
+                        .withCrossTotal(new BigDecimal("118"))
+                        .withTax(new Taxes.IGV()
+                                        .setAmount(new BigDecimal("18"))
+                                        .setTaxableAmount(new BigDecimal("100")))
+                        .withLines(List.of(Line.builder().withSku("warm-up")
+                                        .withDescription("warm-up")
+                                        .withQuantity(BigDecimal.ONE)
+                                        .withCrossUnitPrice(new BigDecimal("118"))
+                                        .withCrossPrice(new BigDecimal("118"))
+                                        .withNetUnitPrice(new BigDecimal("100"))
+                                        .withNetPrice(new BigDecimal("100"))
+                                        .withTax(new Taxes.IGV()
+                                                        .setAmount(new BigDecimal("18"))
+                                                        .setTaxableAmount(new BigDecimal("100")))
+                                        .build()));
+    }
+
+    /**
+     * Duration of each warm-up phase, in execution order.
+     */
+    public static final class Report
+    {
+
+        private final Map<String, Duration> phases = new LinkedHashMap<>();
+        private final Map<String, Exception> errors = new LinkedHashMap<>();
+
+        private Report()
+        {
+        }
+
+        private void run(final String phase,
+                         final Phase runnable)
+        {
+            final var start = System.nanoTime();
+            try {
+                runnable.run();
+            } catch (final Exception e) {
+                LOG.error("Catched", e);
+                errors.put(phase, e);
+            }
+            phases.put(phase, Duration.ofNanos(System.nanoTime() - start));
+        }
+
+        public Map<String, Duration> getPhases()
+        {
+            return Collections.unmodifiableMap(phases);
+        }
+
+        /**
+         * @return the exceptions of the phases that failed
+         */
+        public Map<String, Exception> getErrors()
+        {
+            return Collections.unmodifiableMap(errors);
+        }
+
+        public boolean isSuccess()
+        {
+            return errors.isEmpty();
+        }
+
+        public Duration getTotal()
+        {
+            return phases.values().stream().reduce(Duration.ZERO, Duration::plus);
+        }
+
+        @Override
+        public String toString()
+        {
+            return phases.entrySet().stream()
+                            .map(entry -> entry.getKey() + "=" + entry.getValue().toMillis() + "ms"
+                                            + (errors.containsKey(entry.getKey()) ? " (failed)" : ""))
+                            .collect(Collectors.joining(", "));
+        }
+    }
+
+    @FunctionalInterface
+    private interface Phase
+    {
+
+        void run()
+            throws Exception;
+    }
+}
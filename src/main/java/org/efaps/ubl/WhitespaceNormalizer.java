@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl;
+
+import org.w3c.dom.Node;
+
+/**
+ * Removes the indentation from the whitespace-only text nodes of a document
+ * before it is signed, keeping the line breaks. Equivalent to applying
+ * <code>replaceAll("(\\t|\\ )", "")</code> to every node matched by
+ * <code>//text()[normalize-space()='']</code>, but done in one walk over the
+ * tree that changes the text nodes in place.
+ */
+public final class WhitespaceNormalizer
+{
+
+    private WhitespaceNormalizer()
+    {
+    }
+
+    /**
+     * Normalizes all text nodes below the given node.
+     *
+     * @param root node to start at, usually the document
+     */
+    public static void normalize(final Node root)
+    {
+        var node = root;
+        while (node != null) {
+            final var type = node.getNodeType();
+            if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+                final var value = node.getNodeValue();
+                final var normalized = strip(value);
+                if (normalized != value) {
+                    node.setNodeValue(normalized);
+                }
+            }
+            // depth first without recursion
+            var next = node.getFirstChild();
+            while (next == null && node != root) {
+                next = node.getNextSibling();
+                if (next == null) {
+                    node = node.getParentNode();
+                }
+            }
+            node = next;
+        }
+    }
+
+    /**
+     * @param value text to check
+     * @return the value without blanks and tabs if it consists of whitespace
+     *         only, else the value itself
+     */
+    static String strip(final String value)
+    {
+        var indented = false;
+        for (int i = 0; i < value.length(); i++) {
+            final var c = value.charAt(i);
+            if (c == ' ' || c == '\t') {
+                indented = true;
+            } else if (c != '\n' && c != '\r') {
+                return value;
+            }
+        }
+        if (!indented) {
+            return value;
+        }
+        final var ret = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final var c = value.charAt(i);
+            if (c == '\n' || c == '\r') {
+                ret.append(c);
+            }
+        }
+        return ret.toString();
+    }
+}
@@ -16,7 +16,6 @@
 package org.efaps.ubl.documents;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
@@ -26,6 +25,7 @@ import java.util.List;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 import org.efaps.ubl.documents.elements.AllowancesCharges;
+import org.efaps.ubl.documents.elements.DocumentTotals;
 import org.efaps.ubl.documents.elements.Taxes;
 import org.efaps.ubl.documents.elements.Utils;
 import org.efaps.ubl.documents.interfaces.IAllowanceChargeEntry;
@@ -34,18 +34,14 @@ import org.efaps.ubl.documents.interfaces.ILine;
 import org.efaps.ubl.documents.interfaces.IPaymentTerms;
 import org.efaps.ubl.documents.interfaces.ISupplier;
 import org.efaps.ubl.documents.interfaces.ITaxEntry;
-import org.efaps.ubl.extension.Definitions;
+import org.efaps.ubl.instrumentation.Instrumentations;
 import org.efaps.ubl.marshaller.DocumentMarshaller;
+import org.efaps.ubl.marshaller.DocumentType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
 
-import com.helger.ubl21.CUBL21;
-import com.helger.ubl21.UBL21NamespaceContext;
-
-import oasis.names.specification.ubl.schema.xsd.commonaggregatecomponents_21.CreditNoteLineType;
-import oasis.names.specification.ubl.schema.xsd.commonaggregatecomponents_21.InvoiceLineType;
 import oasis.names.specification.ubl.schema.xsd.commonaggregatecomponents_21.MonetaryTotalType;
-import oasis.names.specification.ubl.schema.xsd.commonaggregatecomponents_21.TaxTotalType;
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.ChargeTotalAmountType;
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.CustomizationIDType;
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.IssueDateType;
@@ -54,7 +50,6 @@ import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.Payable
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.PayableRoundingAmountType;
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.TaxExclusiveAmountType;
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.TaxInclusiveAmountType;
-import oasis.names.specification.ubl.schema.xsd.creditnote_21.CreditNoteType;
 import oasis.names.specification.ubl.schema.xsd.invoice_21.InvoiceType;
 
 public abstract class AbstractDocument<T extends AbstractDocument<T>>
@@ -76,6 +71,9 @@ public abstract class AbstractDocument<T extends AbstractDocument<T>>
     private List<ILine> lines = new ArrayList<>();
     private IPaymentTerms paymentTerms;
     private Charset encoding = StandardCharsets.UTF_8;
+    private boolean formattedOutput = true;
+    private boolean streamingWriter;
+    private boolean deriveTaxes;
 
     public String getCurrency()
     {
@@ -297,69 +295,95 @@ public abstract class AbstractDocument<T extends AbstractDocument<T>>
         return getThis();
     }
 
-    @Override
-    public String toString()
+    public boolean isFormattedOutput()
     {
-        return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+        return formattedOutput;
     }
 
-    protected abstract T getThis();
-
-    protected abstract String getDocType();
-
-    protected MonetaryTotalType getMonetaryTotal(final InvoiceType invoice)
+    /**
+     * Indentation of the xml returned by {@link #getUBLXml()}. The
+     * indentation is removed again when the document is signed, so
+     * <code>false</code> saves producing and removing it. The line breaks of
+     * the formatted output remain in a signed document, therefore the signed
+     * result is not the same for both settings.
+     *
+     * @param formattedOutput indent the xml, default <code>true</code>
+     * @return this
+     */
+    public T withFormattedOutput(final boolean formattedOutput)
     {
-        final var ret = new MonetaryTotalType();
-        ret.setLineExtensionAmount(Utils.getAmount(LineExtensionAmountType.class, evalLineExtensionForTotal(invoice)));
-        ret.setTaxExclusiveAmount(Utils.getAmount(TaxExclusiveAmountType.class, getNetTotal()));
+        this.formattedOutput = formattedOutput;
+        return getThis();
+    }
 
-        // TaxExclusiveAmount + all taxes
-        final var taxInclusive = getNetTotal().add(invoice.getTaxTotal().stream().map(TaxTotalType::getTaxAmountValue)
-                        .reduce(BigDecimal.ZERO, BigDecimal::add));
-        ret.setTaxInclusiveAmount(Utils.getAmount(TaxInclusiveAmountType.class, taxInclusive));
+    public boolean isStreamingWriter()
+    {
+        return streamingWriter;
+    }
 
-        // we do not have allowances yet
-        // ret.setAllowanceTotalAmount(Utils.getAmount(AllowanceTotalAmountType.class,
-        // new BigDecimal("0")));
+    /**
+     * Generate the xml returned by {@link #getUBLXml()} with a
+     * {@link javax.xml.stream.XMLStreamWriter} directly from the lines, taxes
+     * and charges instead of building and marshalling the JAXB object graph.
+     * The result is the same, but it is produced faster and with less
+     * garbage. Only Invoices, Receipts and CreditNotes support it.
+     *
+     * @param streamingWriter use the streaming writer, default
+     *            <code>false</code>
+     * @return this
+     */
+    public T withStreamingWriter(final boolean streamingWriter)
+    {
+        this.streamingWriter = streamingWriter;
+        return getThis();
+    }
 
-        // 2021-09-09 Bizlinks:
-        // Total precio venta + Sumatoria otros cargos - Sumatoria otros
-        // descuentas (que no afecta la base imponible)
-        ret.setPayableAmount(Utils.getAmount(PayableAmountType.class, getCrossTotal()));
+    public boolean isDeriveTaxes()
+    {
+        return deriveTaxes;
+    }
 
-        evalChargeTotal(ret);
-        return ret;
+    /**
+     * Derive the TaxTotal of the document from the taxes of the lines, one
+     * subtotal per tax scheme and tax type, instead of using the taxes given
+     * by {@link #withTaxes(List)}. If taxes are given anyway, differences to
+     * the derived ones after rounding are logged as warning.
+     *
+     * @param deriveTaxes derive the taxes, default <code>false</code>
+     * @return this
+     */
+    public T withDeriveTaxes(final boolean deriveTaxes)
+    {
+        this.deriveTaxes = deriveTaxes;
+        return getThis();
     }
 
-    protected MonetaryTotalType getMonetaryTotal(final CreditNoteType creditNote)
+    @Override
+    public String toString()
     {
-        final var ret = new MonetaryTotalType();
-        ret.setLineExtensionAmount(
-                        Utils.getAmount(LineExtensionAmountType.class, evalLineExtensionForTotal(creditNote)));
-        ret.setTaxExclusiveAmount(Utils.getAmount(TaxExclusiveAmountType.class, getNetTotal()));
+        return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+    }
 
-        // TaxExclusiveAmount + all taxes
-        final var taxInclusive = getNetTotal().add(creditNote.getTaxTotal().stream()
-                        .map(TaxTotalType::getTaxAmountValue).reduce(BigDecimal.ZERO, BigDecimal::add));
-        ret.setTaxInclusiveAmount(Utils.getAmount(TaxInclusiveAmountType.class, taxInclusive));
+    protected abstract T getThis();
 
-        // we do not have allowances yet
-        // ret.setAllowanceTotalAmount(Utils.getAmount(AllowanceTotalAmountType.class,
-        // new BigDecimal("0")));
+    protected abstract String getDocType();
 
-        // 2021-09-09 Bizlinks:
-        // Total precio venta + Sumatoria otros cargos - Sumatoria otros
-        // descuentas (que no afecta la base imponible)
-        // PayableAmount
-        final var amount = getPayableAmount() == null || getPayableAmount().compareTo(BigDecimal.ZERO) == 0
-                        ? getCrossTotal()
-                        : getPayableAmount();
-        ret.setPayableAmount(Utils.getAmount(PayableAmountType.class, amount));
-        if (amount.subtract(getCrossTotal()).compareTo(BigDecimal.ZERO) != 0) {
-            ret.setPayableRoundingAmount(Utils.getAmount(PayableRoundingAmountType.class,
-                            amount.subtract(getCrossTotal())));
+    /**
+     * Evaluates the totals of the document in one pass over the lines.
+     *
+     * @param includeFreeTaxes the condition price of the lines includes the
+     *            taxes free of charge
+     * @return the totals
+     */
+    protected DocumentTotals evalTotals(final boolean includeFreeTaxes)
+    {
+        final var ret = DocumentTotals.of(getLines(), getTaxes(), getAllowancesCharges(), getChargeTotal(),
+                        includeFreeTaxes, isDeriveTaxes());
+        if (isDeriveTaxes() && !getTaxes().isEmpty()) {
+            for (final var difference : ret.getTaxDifferences()) {
+                LOG.warn("Tax of document {} differs from its lines: {}", getNumber(), difference);
+            }
         }
-        evalChargeTotal(ret);
         return ret;
     }
 
@@ -379,69 +403,75 @@ public abstract class AbstractDocument<T extends AbstractDocument<T>>
     // ('Código de motivo de cargo' igual a
     // '49')(cbc:AllowanceChargeReasonCode), con una tolerancia de + - 1
     //
-    protected BigDecimal evalLineExtensionForTotal(final InvoiceType invoice)
-    {
-        var lineExt = invoice.getInvoiceLine().stream().map(InvoiceLineType::getLineExtensionAmountValue)
-                        .reduce(BigDecimal.ZERO, BigDecimal::add);
-        if (invoice.hasAllowanceChargeEntries()) {
-            for (final var allowanceCharge : invoice.getAllowanceCharge()) {
-                if ("02".equals(allowanceCharge.getAllowanceChargeReasonCodeValue())) {
-                    lineExt = lineExt.subtract(allowanceCharge.getAmountValue());
-                }
-                if ("49".equals(allowanceCharge.getAllowanceChargeReasonCodeValue())) {
-                    lineExt = lineExt.add(allowanceCharge.getAmountValue());
-                }
-            }
+    protected MonetaryTotalType getMonetaryTotal(final DocumentTotals totals,
+                                                 final boolean isCreditNote)
+    {
+        final var ret = new MonetaryTotalType();
+        ret.setLineExtensionAmount(Utils.getAmount(LineExtensionAmountType.class, totals.getLineExtension()));
+        ret.setTaxExclusiveAmount(Utils.getAmount(TaxExclusiveAmountType.class, getNetTotal()));
+
+        // TaxExclusiveAmount + all taxes
+        final var taxInclusive = getNetTotal().add(totals.getTaxAmount());
+        ret.setTaxInclusiveAmount(Utils.getAmount(TaxInclusiveAmountType.class, taxInclusive));
+
+        // we do not have allowances yet
+        // ret.setAllowanceTotalAmount(Utils.getAmount(AllowanceTotalAmountType.class,
+        // new BigDecimal("0")));
+
+        // 2021-09-09 Bizlinks:
+        // Total precio venta + Sumatoria otros cargos - Sumatoria otros
+        // descuentas (que no afecta la base imponible)
+        // PayableAmount
+        final var amount = !isCreditNote || getPayableAmount() == null
+                        || getPayableAmount().compareTo(BigDecimal.ZERO) == 0
+                                        ? getCrossTotal()
+                                        : getPayableAmount();
+        ret.setPayableAmount(Utils.getAmount(PayableAmountType.class, amount));
+        if (amount.subtract(getCrossTotal()).compareTo(BigDecimal.ZERO) != 0) {
+            ret.setPayableRoundingAmount(Utils.getAmount(PayableRoundingAmountType.class,
+                            amount.subtract(getCrossTotal())));
         }
-        return lineExt;
+        if (totals.getChargeTotal() != null) {
+            ret.setChargeTotalAmount(Utils.getAmount(ChargeTotalAmountType.class, totals.getChargeTotal()));
+        }
+        return ret;
     }
 
-    protected BigDecimal evalLineExtensionForTotal(final CreditNoteType creditNote)
+    public String getUBLXml()
     {
-        var lineExt = creditNote.getCreditNoteLine().stream().map(CreditNoteLineType::getLineExtensionAmountValue)
-                        .reduce(BigDecimal.ZERO, BigDecimal::add);
-        if (creditNote.hasAllowanceChargeEntries()) {
-            for (final var allowanceCharge : creditNote.getAllowanceCharge()) {
-                if ("02".equals(allowanceCharge.getAllowanceChargeReasonCodeValue())) {
-                    lineExt = lineExt.subtract(allowanceCharge.getAmountValue());
-                }
-                if ("49".equals(allowanceCharge.getAllowanceChargeReasonCodeValue())) {
-                    lineExt = lineExt.add(allowanceCharge.getAmountValue());
-                }
-            }
+        if (isStreamingWriter()) {
+            return Instrumentations.generate(DocumentType.INVOICE, getNumber(), getLineCount(), getEncoding(),
+                            () -> new StaxWriter(this).getAsString());
         }
-        return lineExt;
+        return Instrumentations.generate(DocumentType.INVOICE, getNumber(), getLineCount(), getEncoding(),
+                        this::createInvoice,
+                        invoice -> DocumentMarshaller.invoice()
+                                        .setCharset(getEncoding())
+                                        .setFormattedOutput(isFormattedOutput())
+                                        .getAsString(invoice));
     }
 
-    protected void evalChargeTotal(final MonetaryTotalType total)
+    /**
+     * @return number of lines of the document, used for instrumentation
+     */
+    protected int getLineCount()
     {
-        BigDecimal chargeTotalAmount = null;
-        if (getChargeTotal() != null && getChargeTotal().compareTo(BigDecimal.ZERO) != 0) {
-            chargeTotalAmount = getChargeTotal();
+        return getLines() == null ? 0 : getLines().size();
+    }
 
-        } else if (!getAllowancesCharges().isEmpty()) {
-            chargeTotalAmount = getAllowancesCharges().stream()
-                            .map(entry -> {
-                                if (entry.isCharge()) {
-                                    return entry.getAmount();
-                                } else {
-                                    return BigDecimal.ZERO;
-                                }
-                            }).reduce(BigDecimal.ZERO, BigDecimal::add);
-        }
-        if (chargeTotalAmount != null && chargeTotalAmount.compareTo(BigDecimal.ZERO) != 0) {
-            total.setChargeTotalAmount(Utils.getAmount(ChargeTotalAmountType.class,
-                            chargeTotalAmount.setScale(2, RoundingMode.HALF_UP)));
-        }
+    /**
+     * Gets the UBL as DOM document, e.g. to sign it without serializing it
+     * first.
+     *
+     * @return the UBL document
+     */
+    public Document getUBLDocument()
+    {
+        return DocumentMarshaller.invoice().getAsDocument(createInvoice());
     }
 
-    public String getUBLXml()
+    protected InvoiceType createInvoice()
     {
-        if (!UBL21NamespaceContext.getInstance().getPrefixToNamespaceURIMap().containsKey("sac")) {
-            UBL21NamespaceContext.getInstance().addMapping("sac", Definitions.NAMESPACE_SUNATAGGREGATE);
-            UBL21NamespaceContext.getInstance().removeMapping("cec");
-            UBL21NamespaceContext.getInstance().addMapping("ext", CUBL21.XML_SCHEMA_CEC_NAMESPACE_URL);
-        }
         final InvoiceType invoice = new InvoiceType();
         invoice.setUBLVersionID("2.1");
         final var customizationID = new CustomizationIDType();
@@ -456,14 +486,12 @@ public abstract class AbstractDocument<T extends AbstractDocument<T>>
         invoice.addSignature(Utils.getSignature(getSupplier()));
         invoice.setAccountingSupplierParty(Utils.getSupplier(getSupplier()));
         invoice.setAccountingCustomerParty(Utils.getCustomer(getCustomer()));
-        invoice.setInvoiceLine(Utils.getInvoiceLines(getLines()));
+        final var totals = evalTotals(false);
+        invoice.setInvoiceLine(Utils.getInvoiceLines(getLines(), totals));
         invoice.setAllowanceCharge(AllowancesCharges.getAllowanceCharge(getAllowancesCharges()));
-        invoice.setTaxTotal(Taxes.getTaxTotal(getTaxes(), false));
-        invoice.setLegalMonetaryTotal(getMonetaryTotal(invoice));
+        invoice.setTaxTotal(Taxes.getTaxTotal(totals.getTaxes(), false, totals.getTaxAmount()));
+        invoice.setLegalMonetaryTotal(getMonetaryTotal(totals, false));
         invoice.setPaymentTerms(Utils.getPaymentTerms(getPaymentTerms()));
-        return DocumentMarshaller.invoice()
-                        .setCharset(getEncoding())
-                        .setFormattedOutput(true)
-                        .getAsString(invoice);
+        return invoice;
     }
 }
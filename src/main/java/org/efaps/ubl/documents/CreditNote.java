@@ -20,11 +20,10 @@ import org.efaps.ubl.documents.elements.Reference;
 import org.efaps.ubl.documents.elements.Taxes;
 import org.efaps.ubl.documents.elements.Utils;
 import org.efaps.ubl.documents.values.CreditNoteTypeCode;
-import org.efaps.ubl.extension.Definitions;
+import org.efaps.ubl.instrumentation.Instrumentations;
 import org.efaps.ubl.marshaller.DocumentMarshaller;
-
-import com.helger.ubl21.CUBL21;
-import com.helger.ubl21.UBL21NamespaceContext;
+import org.efaps.ubl.marshaller.DocumentType;
+import org.w3c.dom.Document;
 
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.CustomizationIDType;
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.IssueDateType;
@@ -79,11 +78,26 @@ public class CreditNote
     @Override
     public String getUBLXml()
     {
-        if (!UBL21NamespaceContext.getInstance().getPrefixToNamespaceURIMap().containsKey("sac")) {
-            UBL21NamespaceContext.getInstance().addMapping("sac", Definitions.NAMESPACE_SUNATAGGREGATE);
-            UBL21NamespaceContext.getInstance().removeMapping("cec");
-            UBL21NamespaceContext.getInstance().addMapping ("ext", CUBL21.XML_SCHEMA_CEC_NAMESPACE_URL);
+        if (isStreamingWriter()) {
+            return Instrumentations.generate(DocumentType.CREDIT_NOTE, getNumber(), getLineCount(), getEncoding(),
+                            () -> new StaxWriter(this).getAsString());
         }
+        return Instrumentations.generate(DocumentType.CREDIT_NOTE, getNumber(), getLineCount(), getEncoding(),
+                        this::createCreditNote,
+                        creditNote -> DocumentMarshaller.creditNote()
+                                        .setCharset(getEncoding())
+                                        .setFormattedOutput(isFormattedOutput())
+                                        .getAsString(creditNote));
+    }
+
+    @Override
+    public Document getUBLDocument()
+    {
+        return DocumentMarshaller.creditNote().getAsDocument(createCreditNote());
+    }
+
+    protected CreditNoteType createCreditNote()
+    {
         final var creditNote = new CreditNoteType();
         creditNote.setUBLVersionID("2.1");
         final var customizationID = new CustomizationIDType();
@@ -98,17 +112,14 @@ public class CreditNote
         creditNote.addSignature(Utils.getSignature(getSupplier()));
         creditNote.setAccountingSupplierParty(Utils.getSupplier(getSupplier()));
         creditNote.setAccountingCustomerParty(Utils.getCustomer(getCustomer()));
-        creditNote.setCreditNoteLine(Utils.getCreditNoteLines(getLines()));
+        final var totals = evalTotals(true);
+        creditNote.setCreditNoteLine(Utils.getCreditNoteLines(getLines(), totals));
         creditNote.setAllowanceCharge(AllowancesCharges.getAllowanceCharge(getAllowancesCharges()));
-        creditNote.setTaxTotal(Taxes.getTaxTotal(getTaxes(), false));
-        creditNote.setLegalMonetaryTotal(getMonetaryTotal(creditNote));
+        creditNote.setTaxTotal(Taxes.getTaxTotal(totals.getTaxes(), false, totals.getTaxAmount()));
+        creditNote.setLegalMonetaryTotal(getMonetaryTotal(totals, true));
         creditNote.setPaymentTerms(Utils.getPaymentTerms(getPaymentTerms()));
         creditNote.setBillingReference(Utils.getBillingReferenceType(getReference()));
         creditNote.setDiscrepancyResponse(Utils.getDiscrepancyResponse(getCreditNoteTypeCode()));
-
-        return DocumentMarshaller.creditNote()
-                        .setCharset(getEncoding())
-                        .setFormattedOutput(true)
-                        .getAsString(creditNote);
+        return creditNote;
     }
 }
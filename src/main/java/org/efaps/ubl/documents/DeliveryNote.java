@@ -24,13 +24,12 @@ import org.apache.commons.lang3.builder.ToStringStyle;
 import org.efaps.ubl.documents.elements.Shipment;
 import org.efaps.ubl.documents.elements.Utils;
 import org.efaps.ubl.documents.values.Catalogs;
-import org.efaps.ubl.extension.Definitions;
+import org.efaps.ubl.instrumentation.Instrumentations;
 import org.efaps.ubl.marshaller.DocumentMarshaller;
+import org.efaps.ubl.marshaller.DocumentType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-
-import com.helger.ubl21.CUBL21;
-import com.helger.ubl21.UBL21NamespaceContext;
+import org.w3c.dom.Document;
 
 import oasis.names.specification.ubl.schema.xsd.commonaggregatecomponents_21.DeliveryType;
 import oasis.names.specification.ubl.schema.xsd.commonaggregatecomponents_21.DespatchType;
@@ -94,14 +93,25 @@ public class DeliveryNote
 
     @Override
     public String getUBLXml()
+    {
+        return Instrumentations.generate(DocumentType.DESPATCH_ADVICE, getNumber(), getLineCount(),
+                        StandardCharsets.UTF_8, this::createDespatchAdvice,
+                        despatchAdvice -> DocumentMarshaller.deliveryNote()
+                                        .setCharset(StandardCharsets.UTF_8)
+                                        .setFormattedOutput(isFormattedOutput())
+                                        .getAsString(despatchAdvice));
+    }
+
+    @Override
+    public Document getUBLDocument()
+    {
+        return DocumentMarshaller.deliveryNote().getAsDocument(createDespatchAdvice());
+    }
+
+    protected DespatchAdviceType createDespatchAdvice()
     {
         LOG.debug("Converting to UBL: {}", this);
 
-        if (!UBL21NamespaceContext.getInstance().getPrefixToNamespaceURIMap().containsKey("sac")) {
-            UBL21NamespaceContext.getInstance().addMapping("sac", Definitions.NAMESPACE_SUNATAGGREGATE);
-            UBL21NamespaceContext.getInstance().removeMapping("cec");
-            UBL21NamespaceContext.getInstance().addMapping("ext", CUBL21.XML_SCHEMA_CEC_NAMESPACE_URL);
-        }
         final var despatchAdvice = new DespatchAdviceType();
         despatchAdvice.setUBLVersionID("2.1");
         final var customizationID = new CustomizationIDType();
@@ -188,10 +198,7 @@ public class DeliveryNote
             shipment.addTransportHandlingUnit(transportHandlingUnitType);
         });
         despatchAdvice.setShipment(shipment);
-        return DocumentMarshaller.deliveryNote()
-            .setCharset(StandardCharsets.UTF_8)
-            .setFormattedOutput(true)
-            .getAsString(despatchAdvice);
+        return despatchAdvice;
     }
 
     @Override
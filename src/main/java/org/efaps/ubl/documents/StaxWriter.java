@@ -0,0 +1,609 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.documents;
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.commons.lang3.StringUtils;
+import org.efaps.ubl.documents.elements.DocumentTotals;
+import org.efaps.ubl.documents.elements.Utils;
+import org.efaps.ubl.documents.interfaces.IAddress;
+import org.efaps.ubl.documents.interfaces.IAdditionalItemProperty;
+import org.efaps.ubl.documents.interfaces.ICarrier;
+import org.efaps.ubl.documents.interfaces.ILine;
+import org.efaps.ubl.documents.interfaces.IParty;
+import org.efaps.ubl.documents.interfaces.ISupplier;
+import org.efaps.ubl.documents.interfaces.ITaxEntry;
+import org.efaps.ubl.documents.values.Catalogs;
+import org.efaps.ubl.documents.values.ItemPropertyType;
+import org.efaps.ubl.documents.values.TaxType;
+import org.efaps.ubl.extension.Definitions;
+import org.efaps.ubl.marshaller.DocumentMarshaller;
+import org.efaps.ubl.marshaller.DocumentValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.helger.ubl21.CUBL21;
+import com.helger.xsds.xmldsig.CXMLDSig;
+
+/**
+ * Writes Invoices, Receipts and CreditNotes directly with a
+ * {@link XMLStreamWriter} instead of building the JAXB object graph and
+ * marshalling it. The values, the order of the elements and attributes and
+ * the indentation are the same as the ones of the
+ * {@link org.efaps.ubl.marshaller.DocumentMarshaller}, so the two ways of
+ * generating a document can be exchanged.
+ */
+final class StaxWriter
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger(StaxWriter.class);
+
+    private static final XMLOutputFactory FACTORY = XMLOutputFactory.newDefaultFactory();
+
+    private static final String CAC = "cac";
+    private static final String CBC = "cbc";
+
+    /** Currency used by {@link Utils#getAmount(Class, BigDecimal)}. */
+    private static final String CURRENCY = "PEN";
+
+    private static final String UNECE = "United Nations Economic Commission for Europe";
+
+    private final AbstractDocument<?> document;
+
+    private StringWriter out;
+    private XMLStreamWriter writer;
+    private boolean formatted;
+    private int depth;
+    private boolean hasChildren;
+
+    StaxWriter(final AbstractDocument<?> document)
+    {
+        this.document = document;
+    }
+
+    /**
+     * Writes the document and, as the marshaller does unless its schema is
+     * switched off, validates it against the schema.
+     *
+     * @return the xml of the document or <code>null</code> if it could not
+     *         be written or is not valid
+     */
+    String getAsString()
+    {
+        String ret = null;
+        out = new StringWriter();
+        try {
+            writer = FACTORY.createXMLStreamWriter(out);
+            formatted = document.isFormattedOutput();
+            depth = 0;
+            hasChildren = false;
+            write();
+            writer.close();
+            ret = validate(out.toString());
+        } catch (final XMLStreamException e) {
+            LOG.error("Catched", e);
+        }
+        return ret;
+    }
+
+    private String validate(final String xml)
+    {
+        final var marshaller = document instanceof CreditNote ? DocumentMarshaller.creditNote()
+                        : DocumentMarshaller.invoice();
+        String ret = xml;
+        if (marshaller.isUseSchema()) {
+            final var errors = DocumentValidator.validate(marshaller.getDocumentType(),
+                            xml.getBytes(document.getEncoding()));
+            if (!errors.isEmpty()) {
+                for (final var error : errors) {
+                    LOG.error("Document {} is not valid: {}", document.getNumber(), error.getMessage());
+                }
+                ret = null;
+            }
+        }
+        return ret;
+    }
+
+    private void write()
+        throws XMLStreamException
+    {
+        final var creditNote = document instanceof CreditNote ? (CreditNote) document : null;
+        final var root = creditNote == null ? "Invoice" : "CreditNote";
+        final var totals = document.evalTotals(creditNote != null);
+
+        writer.writeStartDocument(document.getEncoding().name(), "1.0");
+        if (formatted) {
+            writer.writeCharacters("\n");
+        }
+        writer.writeStartElement(root);
+        writer.writeDefaultNamespace("urn:oasis:names:specification:ubl:schema:xsd:" + root + "-2");
+        writer.writeNamespace("ds", CXMLDSig.NAMESPACE_URI);
+        writer.writeNamespace("sac", Definitions.NAMESPACE_SUNATAGGREGATE);
+        writer.writeNamespace(CAC, CUBL21.XML_SCHEMA_CAC_NAMESPACE_URL);
+        writer.writeNamespace("ext", CUBL21.XML_SCHEMA_CEC_NAMESPACE_URL);
+        writer.writeNamespace(CBC, CUBL21.XML_SCHEMA_CBC_NAMESPACE_URL);
+        depth++;
+
+        leaf("UBLVersionID", "2.1");
+        leaf("CustomizationID", "2.0", "schemeAgencyName", Utils.AGENCYNAME);
+        leaf("ID", document.getNumber());
+        leaf("IssueDate", document.getDate() == null ? null : document.getDate().toString());
+        leaf(root + "TypeCode", document.getDocType(),
+                        "listID", "0101",
+                        "listAgencyName", Utils.AGENCYNAME,
+                        "listName", Catalogs.TDOC.getName(),
+                        "listURI", Catalogs.TDOC.getURI());
+        leaf("Note", Utils.getWords4Number(document.getCrossTotal()), "languageLocaleID", "1000");
+        leaf("DocumentCurrencyCode", document.getCurrency(),
+                        "listID", "ISO 4217 Alpha",
+                        "listAgencyName", UNECE,
+                        "listName", "Currency");
+        if (creditNote != null) {
+            start("DiscrepancyResponse");
+            leaf("ResponseCode", creditNote.getCreditNoteTypeCode().getCode());
+            leaf("Description", creditNote.getCreditNoteTypeCode().getDescription());
+            end();
+            final var reference = creditNote.getReference();
+            start("BillingReference");
+            start("InvoiceDocumentReference");
+            leaf("ID", reference.getNumber());
+            leaf("IssueDate", reference.getDate() == null ? null : reference.getDate().toString());
+            leaf("DocumentTypeCode", reference.getDocType());
+            end();
+            end();
+        }
+        writeSignature();
+        start("AccountingSupplierParty");
+        writeParty(document.getSupplier());
+        end();
+        start("AccountingCustomerParty");
+        writeParty(document.getCustomer());
+        end();
+        writePaymentTerms();
+        writeAllowanceCharges();
+        writeTaxTotal(totals.getTaxes(), false, totals.getTaxAmount());
+        writeMonetaryTotal(creditNote != null, totals);
+        var idx = 1;
+        for (final var line : document.getLines()) {
+            writeLine(root + "Line", creditNote != null, line, idx, totals);
+            idx++;
+        }
+        depth--;
+        indent();
+        writer.writeEndElement();
+        writer.writeEndDocument();
+    }
+
+    private void writeSignature()
+        throws XMLStreamException
+    {
+        final var supplier = document.getSupplier();
+        start("Signature");
+        leaf("ID", "SB001-000095");
+        start("SignatoryParty");
+        start("PartyIdentification");
+        leaf("ID", supplier.getDOI());
+        end();
+        start("PartyName");
+        leaf("Name", supplier.getName());
+        end();
+        end();
+        start("DigitalSignatureAttachment");
+        start("ExternalReference");
+        leaf("URI", "SB001-000095");
+        end();
+        end();
+        end();
+    }
+
+    private void writeParty(final IParty party)
+        throws XMLStreamException
+    {
+        start("Party");
+        start("PartyIdentification");
+        leaf("ID", party.getDOI(),
+                        "schemeID", party.getDoiType(),
+                        "schemeName", Catalogs.DOI.getName(),
+                        "schemeAgencyName", Utils.AGENCYNAME,
+                        "schemeURI", Catalogs.DOI.getURI());
+        end();
+        if (party instanceof ISupplier) {
+            start("PartyName");
+            leaf("Name", party.getName());
+            end();
+        }
+        start("PartyLegalEntity");
+        leaf("RegistrationName", party.getName());
+        if (party.getCompanyId() != null) {
+            leaf("CompanyID", party.getCompanyId());
+        }
+        if (!(party instanceof ICarrier)) {
+            writeAddress(party);
+        }
+        end();
+        end();
+    }
+
+    private void writeAddress(final IAddress address)
+        throws XMLStreamException
+    {
+        start("RegistrationAddress");
+        if (StringUtils.isNotEmpty(address.getGeoLocationId())) {
+            leaf("ID", address.getGeoLocationId(),
+                            "schemeName", "Ubigeos",
+                            "schemeAgencyName", "PE:INEI");
+        }
+        if (address instanceof final ISupplier supplier) {
+            if (StringUtils.isNotEmpty(supplier.getAnexo())) {
+                leaf("AddressTypeCode", supplier.getAnexo(),
+                                "listAgencyName", Utils.AGENCYNAME,
+                                "listName", "Establecimientos anexos");
+            }
+            if (StringUtils.isNotEmpty(supplier.getStreetName())) {
+                leaf("StreetName", supplier.getStreetName());
+            }
+            if (StringUtils.isNotEmpty(supplier.getDistrict())) {
+                leaf("District", supplier.getDistrict());
+            }
+        }
+        start("AddressLine");
+        leaf("Line", address.getAddressLine());
+        end();
+        if (StringUtils.isNotEmpty(address.getCountry())) {
+            start("Country");
+            leaf("IdentificationCode", address.getCountry(),
+                            "listID", "ISO 3166-1",
+                            "listAgencyName", UNECE,
+                            "listName", "Country");
+            end();
+        }
+        end();
+    }
+
+    private void writePaymentTerms()
+        throws XMLStreamException
+    {
+        final var paymentTerms = document.getPaymentTerms();
+        if (paymentTerms != null) {
+            if (paymentTerms.isCredit()) {
+                writePaymentTerm("Credito", paymentTerms.getTotal(), paymentTerms.getCurrencyId(), null);
+                var i = 1;
+                for (final var installment : paymentTerms.getInstallments()) {
+                    writePaymentTerm(String.format("Cuota%03d", i), installment.getAmount(),
+                                    installment.getCurrencyId(),
+                                    installment.getDueDate() == null ? null : installment.getDueDate().toString());
+                    i++;
+                }
+            } else {
+                start("PaymentTerms");
+                leaf("ID", "FormaPago");
+                leaf("PaymentMeansID", "Contado");
+                end();
+            }
+        }
+    }
+
+    private void writePaymentTerm(final String meansId,
+                                  final BigDecimal amount,
+                                  final String currencyId,
+                                  final String dueDate)
+        throws XMLStreamException
+    {
+        start("PaymentTerms");
+        leaf("ID", "FormaPago");
+        leaf("PaymentMeansID", meansId);
+        amount("Amount", amount, currencyId);
+        if (dueDate != null) {
+            leaf("PaymentDueDate", dueDate);
+        }
+        end();
+    }
+
+    private void writeAllowanceCharges()
+        throws XMLStreamException
+    {
+        for (final var entry : document.getAllowancesCharges()) {
+            start("AllowanceCharge");
+            leaf("ChargeIndicator", String.valueOf(entry.isCharge()));
+            leaf("AllowanceChargeReasonCode", entry.getReason(),
+                            "listAgencyName", Utils.AGENCYNAME,
+                            "listName", Catalogs.CADE.getName(),
+                            "listURI", Catalogs.CADE.getURI());
+            if (entry.getFactor() != null) {
+                leaf("MultiplierFactorNumeric", entry.getFactor().toPlainString());
+            }
+            amount("Amount", entry.getAmount().setScale(2, RoundingMode.HALF_UP));
+            amount("BaseAmount", entry.getBaseAmount().setScale(2, RoundingMode.HALF_UP));
+            end();
+        }
+    }
+
+    private void writeTaxTotal(final List<ITaxEntry> taxEntries,
+                               final boolean isItem,
+                               final BigDecimal taxAmount)
+        throws XMLStreamException
+    {
+        start("TaxTotal");
+        amount("TaxAmount", taxAmount);
+        for (final var taxEntry : taxEntries) {
+            start("TaxSubtotal");
+            if (TaxType.ADVALOREM.equals(taxEntry.getTaxType())) {
+                amount("TaxableAmount", taxEntry.getTaxableAmount().setScale(2, RoundingMode.HALF_UP));
+            }
+            if (TaxType.PERUNIT.equals(taxEntry.getTaxType()) && !isItem) {
+                amount("TaxableAmount", taxEntry.getAmount());
+            }
+            amount("TaxAmount", taxEntry.getAmount().setScale(2, RoundingMode.HALF_UP));
+            if (TaxType.PERUNIT.equals(taxEntry.getTaxType()) && isItem) {
+                leaf("BaseUnitMeasure", taxEntry.getTaxableAmount().setScale(2, RoundingMode.HALF_UP)
+                                .stripTrailingZeros().toPlainString(), "unitCode", "NIU");
+            }
+            writeTaxCategory(taxEntry, isItem);
+            end();
+        }
+        end();
+    }
+
+    private void writeTaxCategory(final ITaxEntry taxEntry,
+                                  final boolean isItem)
+        throws XMLStreamException
+    {
+        start("TaxCategory");
+        if (TaxType.ADVALOREM.equals(taxEntry.getTaxType())) {
+            if (taxEntry.getPercent() != null) {
+                leaf("Percent", taxEntry.getPercent().toPlainString());
+            }
+            if (isItem) {
+                leaf("TaxExemptionReasonCode", taxEntry.getTaxExemptionReasonCode(),
+                                "listAgencyName", Utils.AGENCYNAME,
+                                "listName", Catalogs.AIGV.getName(),
+                                "listURI", Catalogs.AIGV.getURI());
+            }
+        }
+        if (TaxType.PERUNIT.equals(taxEntry.getTaxType()) && isItem) {
+            leaf("Percent", taxEntry.getAmount().toPlainString());
+            amount("PerUnitAmount", taxEntry.getAmount());
+        }
+        start("TaxScheme");
+        leaf("ID", taxEntry.getId(),
+                        "schemeName", Catalogs.TAX.getName(),
+                        "schemeAgencyName", Utils.AGENCYNAME,
+                        "schemeURI", Catalogs.TAX.getURI());
+        leaf("Name", taxEntry.getName());
+        leaf("TaxTypeCode", taxEntry.getCode());
+        end();
+        end();
+    }
+
+    private void writeMonetaryTotal(final boolean isCreditNote,
+                                    final DocumentTotals totals)
+        throws XMLStreamException
+    {
+        var payable = document.getCrossTotal();
+        if (isCreditNote && document.getPayableAmount() != null
+                        && document.getPayableAmount().compareTo(BigDecimal.ZERO) != 0) {
+            payable = document.getPayableAmount();
+        }
+        start("LegalMonetaryTotal");
+        amount("LineExtensionAmount", totals.getLineExtension());
+        amount("TaxExclusiveAmount", document.getNetTotal());
+        amount("TaxInclusiveAmount", document.getNetTotal().add(totals.getTaxAmount()));
+        if (totals.getChargeTotal() != null) {
+            amount("ChargeTotalAmount", totals.getChargeTotal());
+        }
+        if (isCreditNote && payable.subtract(document.getCrossTotal()).compareTo(BigDecimal.ZERO) != 0) {
+            amount("PayableRoundingAmount", payable.subtract(document.getCrossTotal()));
+        }
+        amount("PayableAmount", payable);
+        end();
+    }
+
+    private void writeLine(final String element,
+                           final boolean isCreditNote,
+                           final ILine line,
+                           final int idx,
+                           final DocumentTotals totals)
+        throws XMLStreamException
+    {
+        start(element);
+        leaf("ID", String.valueOf(idx));
+        leaf(isCreditNote ? "CreditedQuantity" : "InvoicedQuantity",
+                        line.getQuantity() == null ? null : line.getQuantity().toPlainString(),
+                        "unitCode", line.getUoMCode(),
+                        "unitCodeListID", "UN/ECE rec 20",
+                        "unitCodeListAgencyName", UNECE);
+        amount("LineExtensionAmount", totals.getLineExtension(idx - 1));
+        start("PricingReference");
+        start("AlternativeConditionPrice");
+        amount("PriceAmount", totals.getConditionPrice(idx - 1));
+        leaf("PriceTypeCode", line.getPriceType(),
+                        "listAgencyName", Utils.AGENCYNAME,
+                        "listName", Catalogs.PRICETYPE.getName(),
+                        "listURI", Catalogs.PRICETYPE.getURI());
+        end();
+        end();
+
+        writeTaxTotal(line.getTaxEntries(), true, totals.getLineTaxAmount(idx - 1));
+
+        start("Item");
+        leaf("Description", line.getDescription());
+        start("SellersItemIdentification");
+        leaf("ID", line.getSku());
+        end();
+        for (final var prop : line.getAdditionalItemProperties()) {
+            writeAdditionalItemProperty(prop);
+        }
+        end();
+
+        start("Price");
+        amount("PriceAmount", line.getNetUnitPrice());
+        end();
+        end();
+    }
+
+    private void writeAdditionalItemProperty(final IAdditionalItemProperty prop)
+        throws XMLStreamException
+    {
+        if (!ItemPropertyType.NORMALIZED.equals(prop.type())) {
+            throw new IllegalArgumentException("Unexpected value: " + prop.type());
+        }
+        start("AdditionalItemProperty");
+        leaf("Name", "Indicador de bien normalizado");
+        leaf("NameCode", "7022",
+                        "listAgencyName", Utils.AGENCYNAME,
+                        "listName", Catalogs.ITEMPROP.getName(),
+                        "listURI", Catalogs.ITEMPROP.getURI());
+        leaf("Value", "0");
+        end();
+    }
+
+    private void amount(final String localName,
+                        final BigDecimal amount)
+        throws XMLStreamException
+    {
+        amount(localName, amount, CURRENCY);
+    }
+
+    private void amount(final String localName,
+                        final BigDecimal amount,
+                        final String currencyId)
+        throws XMLStreamException
+    {
+        leaf(localName, amount == null ? null : amount.toPlainString(), "currencyID", currencyId);
+    }
+
+    /**
+     * Writes a <code>cbc</code> element with text content. Attributes are
+     * given as name/value pairs, attributes without value are omitted like
+     * JAXB does.
+     */
+    private void leaf(final String localName,
+                      final String value,
+                      final String... attributes)
+        throws XMLStreamException
+    {
+        indent();
+        if (value == null) {
+            emptyLeaf(localName, attributes);
+        } else {
+            writer.writeStartElement(CBC, localName, CUBL21.XML_SCHEMA_CBC_NAMESPACE_URL);
+            for (var i = 0; i < attributes.length; i = i + 2) {
+                if (attributes[i + 1] != null) {
+                    writer.writeAttribute(attributes[i], attributes[i + 1]);
+                }
+            }
+            // the stream writer does not escape carriage returns, JAXB does
+            var start = 0;
+            for (var end = value.indexOf('\r'); end > -1; end = value.indexOf('\r', start)) {
+                writer.writeCharacters(value.substring(start, end));
+                writer.writeEntityRef("#xD");
+                start = end + 1;
+            }
+            writer.writeCharacters(start == 0 ? value : value.substring(start));
+            writer.writeEndElement();
+        }
+        hasChildren = true;
+    }
+
+    /**
+     * Writes an element without value as <code>&lt;cbc:Name /&gt;</code>
+     * like JAXB does. The stream writer can only write it without the space,
+     * so it is written directly to the output.
+     */
+    private void emptyLeaf(final String localName,
+                           final String... attributes)
+        throws XMLStreamException
+    {
+        // closes the start tag of the parent if it is still open
+        writer.writeCharacters("");
+        writer.flush();
+        out.append('<').append(CBC).append(':').append(localName);
+        for (var i = 0; i < attributes.length; i = i + 2) {
+            if (attributes[i + 1] != null) {
+                out.append(' ').append(attributes[i]).append("=\"");
+                escapeAttribute(attributes[i + 1]);
+                out.append('"');
+            }
+        }
+        out.append(" />");
+    }
+
+    private void escapeAttribute(final String value)
+    {
+        for (var i = 0; i < value.length(); i++) {
+            final var c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '"':
+                    out.append("&quot;");
+                    break;
+                case '\r':
+                    out.append("&#xD;");
+                    break;
+                default:
+                    out.append(c);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Starts a <code>cac</code> element.
+     */
+    private void start(final String localName)
+        throws XMLStreamException
+    {
+        indent();
+        writer.writeStartElement(CAC, localName, CUBL21.XML_SCHEMA_CAC_NAMESPACE_URL);
+        depth++;
+        hasChildren = false;
+    }
+
+    private void end()
+        throws XMLStreamException
+    {
+        depth--;
+        if (hasChildren) {
+            indent();
+        }
+        writer.writeEndElement();
+        hasChildren = true;
+    }
+
+    private void indent()
+        throws XMLStreamException
+    {
+        if (formatted) {
+            writer.writeCharacters("\n" + "  ".repeat(depth));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.documents.elements;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.efaps.number2words.Converter;
+
+/**
+ * Legend of an amount in words, e.g. "CIENTO DIECIOCHO Y 00/100 ", as used
+ * for the note of the documents. The words of the integer part are kept in a
+ * least recently used cache of {@link #MAX_SIZE} entries, so that the repeated
+ * amounts of the documents are converted only once. The converter keeps no
+ * state and is shared by all threads.
+ */
+public final class AmountWords
+{
+
+    /** Maximum number of integer parts kept in the cache. */
+    public static final int MAX_SIZE = 4096;
+
+    private static final Converter CONVERTER = Converter.getMaleConverter(new Locale("es"));
+
+    private static final Map<Long, String> WORDS = new LinkedHashMap<>(256, 0.75f, true)
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, String> eldest)
+        {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    private AmountWords()
+    {
+    }
+
+    /**
+     * @param amount amount to convert
+     * @return the amount in words, upper case
+     */
+    public static String get(final BigDecimal amount)
+    {
+        final var cents = amount.setScale(2, RoundingMode.HALF_UP).toPlainString();
+        return getWords(amount.longValue()) + " Y " + cents.substring(cents.lastIndexOf('.') + 1) + "/100 ";
+    }
+
+    private static String getWords(final long number)
+    {
+        String ret;
+        synchronized (WORDS) {
+            ret = WORDS.get(number);
+        }
+        if (ret == null) {
+            MISSES.increment();
+            // converted outside of the lock, a concurrent conversion of the
+            // same number only puts the same words twice
+            ret = CONVERTER.convert(number).toUpperCase();
+            synchronized (WORDS) {
+                WORDS.put(number, ret);
+            }
+        } else {
+            HITS.increment();
+        }
+        return ret;
+    }
+
+    /**
+     * @return number of conversions served from the cache
+     */
+    public static long getHitCount()
+    {
+        return HITS.sum();
+    }
+
+    /**
+     * @return number of conversions that were not in the cache
+     */
+    public static long getMissCount()
+    {
+        return MISSES.sum();
+    }
+
+    /**
+     * @return share of the conversions served from the cache, between 0 and
+     *         1
+     */
+    public static double getHitRate()
+    {
+        final var hits = getHitCount();
+        final var total = hits + getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return number of integer parts in the cache
+     */
+    public static int size()
+    {
+        synchronized (WORDS) {
+            return WORDS.size();
+        }
+    }
+
+    /**
+     * Removes all entries from the cache and resets the counters.
+     */
+    public static void clear()
+    {
+        synchronized (WORDS) {
+            WORDS.clear();
+        }
+        HITS.reset();
+        MISSES.reset();
+    }
+}
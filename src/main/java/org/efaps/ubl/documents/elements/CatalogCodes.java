@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.documents.elements;
+
+import org.efaps.ubl.documents.interfaces.ITaxEntry;
+import org.efaps.ubl.documents.values.Catalogs;
+
+import oasis.names.specification.ubl.schema.xsd.commonaggregatecomponents_21.TaxSchemeType;
+import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.AllowanceChargeReasonCodeType;
+import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.IDType;
+import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.NameCodeType;
+import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.PriceTypeCodeType;
+import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.TaxExemptionReasonCodeType;
+
+/**
+ * Builds the catalog coded elements that are repeated for every line of a
+ * document. The agency, catalog name and catalog URI are constants of the
+ * {@link Catalogs} and are shared, the elements themselves are created for
+ * every use, because they become part of the returned JAXB objects and can
+ * be modified by the caller.
+ */
+public final class CatalogCodes
+{
+
+    private CatalogCodes()
+    {
+    }
+
+    public static PriceTypeCodeType getPriceTypeCode(final String value)
+    {
+        final var ret = new PriceTypeCodeType();
+        ret.setListAgencyName(Utils.AGENCYNAME);
+        ret.setListName(Catalogs.PRICETYPE.getName());
+        ret.setListURI(Catalogs.PRICETYPE.getURI());
+        ret.setValue(value);
+        return ret;
+    }
+
+    public static AllowanceChargeReasonCodeType getAllowanceChargeReasonCode(final String value)
+    {
+        final var ret = new AllowanceChargeReasonCodeType();
+        ret.setListAgencyName(Utils.AGENCYNAME);
+        ret.setListName(Catalogs.CADE.getName());
+        ret.setListURI(Catalogs.CADE.getURI());
+        ret.setValue(value);
+        return ret;
+    }
+
+    public static TaxExemptionReasonCodeType getTaxExemptionReasonCode(final String value)
+    {
+        final var ret = new TaxExemptionReasonCodeType();
+        ret.setListAgencyName(Utils.AGENCYNAME);
+        ret.setListName(Catalogs.AIGV.getName());
+        ret.setListURI(Catalogs.AIGV.getURI());
+        ret.setValue(value);
+        return ret;
+    }
+
+    public static NameCodeType getItemPropertyNameCode(final String value)
+    {
+        final var ret = new NameCodeType();
+        ret.setListAgencyName(Utils.AGENCYNAME);
+        ret.setListName(Catalogs.ITEMPROP.getName());
+        ret.setListURI(Catalogs.ITEMPROP.getURI());
+        ret.setValue(value);
+        return ret;
+    }
+
+    public static TaxSchemeType getTaxScheme(final ITaxEntry taxEntry)
+    {
+        final var ret = new TaxSchemeType();
+        final var idType = new IDType();
+        idType.setSchemeAgencyName(Utils.AGENCYNAME);
+        idType.setSchemeName(Catalogs.TAX.getName());
+        idType.setSchemeURI(Catalogs.TAX.getURI());
+        idType.setValue(taxEntry.getId());
+        ret.setID(idType);
+        ret.setName(taxEntry.getName());
+        ret.setTaxTypeCode(taxEntry.getCode());
+        return ret;
+    }
+}
@@ -0,0 +1,550 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.documents.elements;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.efaps.ubl.documents.interfaces.IAllowanceChargeEntry;
+import org.efaps.ubl.documents.interfaces.ILine;
+import org.efaps.ubl.documents.interfaces.ITaxEntry;
+import org.efaps.ubl.documents.values.TaxType;
+
+/**
+ * Totals of a document, evaluated in one pass over its lines. Each line, its
+ * taxes and its allowances and charges are visited once and the values that
+ * are written for the lines and for the document are kept, so that the
+ * writers read them instead of deriving them again from the lines or from the
+ * generated elements.
+ * <ul>
+ * <li>LineExtensionAmount and condition price
+ * ("Precio de Venta Unitario") of each line</li>
+ * <li>TaxAmount of each line, without the taxes free of charge</li>
+ * <li>subtotals of the taxes of the lines per tax scheme and tax type</li>
+ * <li>LineExtensionAmount, TaxAmount and ChargeTotalAmount of the
+ * document</li>
+ * </ul>
+ * The taxes of the document are the given ones or, if they are derived, one
+ * entry per subtotal of the taxes of the lines. The differences between both
+ * after rounding to n(12,2) are reported by {@link #getTaxDifferences()}. The
+ * subtotals are evaluated in the pass over the lines only if the taxes are
+ * derived, else on the first call that needs them.
+ * <p>
+ * The amounts are added and rounded as scaled longs by {@link Money} and
+ * converted to <code>BigDecimal</code> only for the values that are written.
+ * The values are the same as adding and rounding them as
+ * <code>BigDecimal</code>.
+ * </p>
+ */
+public final class DocumentTotals
+{
+
+    private final List<ILine> lines;
+    private final BigDecimal[] lineExtensions;
+    private final BigDecimal[] conditionPrices;
+    private final BigDecimal[] lineTaxAmounts;
+    private volatile Subtotals taxSubtotals;
+    private final List<ITaxEntry> givenTaxes;
+    private final List<ITaxEntry> taxes;
+    private final BigDecimal lineExtension;
+    private final BigDecimal taxAmount;
+    private final BigDecimal chargeTotal;
+
+    private DocumentTotals(final List<ILine> lines,
+                           final BigDecimal[] lineExtensions,
+                           final BigDecimal[] conditionPrices,
+                           final BigDecimal[] lineTaxAmounts,
+                           final Subtotals taxSubtotals,
+                           final List<ITaxEntry> givenTaxes,
+                           final List<ITaxEntry> taxes,
+                           final BigDecimal lineExtension,
+                           final BigDecimal taxAmount,
+                           final BigDecimal chargeTotal)
+    {
+        this.lines = lines;
+        this.lineExtensions = lineExtensions;
+        this.conditionPrices = conditionPrices;
+        this.lineTaxAmounts = lineTaxAmounts;
+        this.taxSubtotals = taxSubtotals;
+        this.givenTaxes = givenTaxes;
+        this.taxes = taxes;
+        this.lineExtension = lineExtension;
+        this.taxAmount = taxAmount;
+        this.chargeTotal = chargeTotal;
+    }
+
+    /**
+     * @param idx index of the line, starting with 0
+     * @return LineExtensionAmount of the line --> n(12,2)
+     */
+    public BigDecimal getLineExtension(final int idx)
+    {
+        return lineExtensions[idx];
+    }
+
+    /**
+     * @param idx index of the line, starting with 0
+     * @return "Precio de Venta Unitario" of the line
+     */
+    public BigDecimal getConditionPrice(final int idx)
+    {
+        return conditionPrices[idx];
+    }
+
+    /**
+     * @param idx index of the line, starting with 0
+     * @return TaxAmount of the line --> n(12,2)
+     */
+    public BigDecimal getLineTaxAmount(final int idx)
+    {
+        return lineTaxAmounts[idx];
+    }
+
+    /**
+     * @return subtotals of the taxes of all lines, in the order the tax
+     *         schemes appear in the lines
+     */
+    public List<TaxSubtotal> getTaxSubtotals()
+    {
+        return Collections.unmodifiableList(getSubtotals().ordered);
+    }
+
+    private Subtotals getSubtotals()
+    {
+        var ret = taxSubtotals;
+        if (ret == null) {
+            ret = new Subtotals();
+            for (final var line : lines) {
+                for (final var taxEntry : line.getTaxEntries()) {
+                    ret.add(taxEntry);
+                }
+            }
+            taxSubtotals = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * @return taxes of the TaxTotal of the document, the given ones or the
+     *         ones derived from the lines
+     */
+    public List<ITaxEntry> getTaxes()
+    {
+        return taxes;
+    }
+
+    /**
+     * Compares the given taxes of the document with the subtotals of the
+     * taxes of the lines, per tax scheme and tax type, after rounding both
+     * to n(12,2).
+     *
+     * @return the differences, empty if the given taxes match the lines
+     */
+    public List<TaxDifference> getTaxDifferences()
+    {
+        final var given = new Subtotals();
+        for (final var taxEntry : givenTaxes) {
+            given.add(taxEntry);
+        }
+        final var subtotals = getSubtotals();
+        final var ret = new ArrayList<TaxDifference>();
+        for (final var subtotal : subtotals.ordered) {
+            final var other = given.get(subtotal.taxEntry);
+            final var difference = new TaxDifference(subtotal.taxEntry,
+                            other == null ? BigDecimal.ZERO : other.getAmount(), subtotal.getAmount());
+            if (difference.getDifference().signum() != 0) {
+                ret.add(difference);
+            }
+        }
+        for (final var other : given.ordered) {
+            if (subtotals.get(other.taxEntry) == null) {
+                ret.add(new TaxDifference(other.taxEntry, other.getAmount(), BigDecimal.ZERO));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return LegalMonetaryTotal/LineExtensionAmount of the document
+     */
+    public BigDecimal getLineExtension()
+    {
+        return lineExtension;
+    }
+
+    /**
+     * @return TaxTotal/TaxAmount of the document --> n(12,2)
+     */
+    public BigDecimal getTaxAmount()
+    {
+        return taxAmount;
+    }
+
+    /**
+     * @return LegalMonetaryTotal/ChargeTotalAmount of the document or
+     *         <code>null</code> if there is none
+     */
+    public BigDecimal getChargeTotal()
+    {
+        return chargeTotal;
+    }
+
+    /**
+     * @param lines lines of the document
+     * @param taxes taxes of the document
+     * @param allowancesCharges allowances and charges of the document
+     * @param chargeTotal charge total given for the document, may be
+     *            <code>null</code>
+     * @param includeFreeTaxes the condition price includes the taxes free of
+     *            charge, as the CreditNote does
+     * @return new totals
+     */
+    public static DocumentTotals of(final List<ILine> lines,
+                                    final List<ITaxEntry> taxes,
+                                    final List<IAllowanceChargeEntry> allowancesCharges,
+                                    final BigDecimal chargeTotal,
+                                    final boolean includeFreeTaxes)
+    {
+        return of(lines, taxes, allowancesCharges, chargeTotal, includeFreeTaxes, false);
+    }
+
+    /**
+     * @param lines lines of the document
+     * @param taxes taxes given for the document
+     * @param allowancesCharges allowances and charges of the document
+     * @param chargeTotal charge total given for the document, may be
+     *            <code>null</code>
+     * @param includeFreeTaxes the condition price includes the taxes free of
+     *            charge, as the CreditNote does
+     * @param deriveTaxes the taxes of the document are derived from the
+     *            taxes of the lines instead of using the given ones
+     * @return new totals
+     */
+    public static DocumentTotals of(final List<ILine> lines,
+                                    final List<ITaxEntry> taxes,
+                                    final List<IAllowanceChargeEntry> allowancesCharges,
+                                    final BigDecimal chargeTotal,
+                                    final boolean includeFreeTaxes,
+                                    final boolean deriveTaxes)
+    {
+        final var size = lines.size();
+        final var lineExtensions = new BigDecimal[size];
+        final var conditionPrices = new BigDecimal[size];
+        final var lineTaxAmounts = new BigDecimal[size];
+        final var subtotals = deriveTaxes ? new Subtotals() : null;
+        final var lineExtension = new Money();
+        final var charged = new Money();
+        final var free = new Money();
+        final var allowancesChargesAmount = new Money();
+        final var price = new Money();
+        var idx = 0;
+        for (final var line : lines) {
+            charged.reset();
+            free.reset();
+            for (final var taxEntry : line.getTaxEntries()) {
+                if (taxEntry.isFreeOfCharge()) {
+                    free.add(taxEntry.getAmount());
+                } else {
+                    charged.add(taxEntry.getAmount());
+                }
+                if (subtotals != null) {
+                    subtotals.add(taxEntry);
+                }
+            }
+            allowancesChargesAmount.reset();
+            for (final var entry : line.getAllowancesCharges()) {
+                allowancesChargesAmount.add(entry.getAmount());
+            }
+            // /Invoice/cac:InvoiceLine/cbc:LineExtensionAmount --> n(12,2)
+            lineExtensions[idx] = Money.round(line.getNetPrice());
+            lineExtension.add(lineExtensions[idx]);
+            // Precio de Venta Unitario = (Valor de venta por ítem + Monto total
+            // de tributos del ítem
+            // + Cargo no afecto por ítem - Descuento no afecto por ítem) /
+            // Cantidad de unidades por ítem
+            price.reset().add(line.getNetPrice()).add(charged);
+            if (includeFreeTaxes) {
+                price.add(free);
+            }
+            conditionPrices[idx] = price.add(allowancesChargesAmount).toBigDecimal()
+                            .divide(line.getQuantity(), RoundingMode.HALF_UP);
+            lineTaxAmounts[idx] = charged.round();
+            idx++;
+        }
+
+        final var charges = new Money();
+        for (final var entry : allowancesCharges) {
+            // 02: descuentos globales que afectan la base, 49: cargos globales
+            // que afectan la base
+            if ("02".equals(entry.getReason())) {
+                lineExtension.subtract(Money.round(entry.getAmount()));
+            }
+            if ("49".equals(entry.getReason())) {
+                lineExtension.add(Money.round(entry.getAmount()));
+            }
+            if (entry.isCharge()) {
+                charges.add(entry.getAmount());
+            }
+        }
+        var chargeAmount = charges.toBigDecimal();
+        if (chargeTotal != null && chargeTotal.compareTo(BigDecimal.ZERO) != 0) {
+            chargeAmount = chargeTotal;
+        }
+
+        List<ITaxEntry> documentTaxes = taxes;
+        if (deriveTaxes) {
+            documentTaxes = new ArrayList<>(subtotals.ordered.size());
+            for (final var subtotal : subtotals.ordered) {
+                documentTaxes.add(new DerivedTax(subtotal));
+            }
+        }
+        final var taxAmount = new Money();
+        for (final var taxEntry : documentTaxes) {
+            if (!taxEntry.isFreeOfCharge()) {
+                taxAmount.add(taxEntry.getAmount());
+            }
+        }
+        return new DocumentTotals(lines, lineExtensions, conditionPrices, lineTaxAmounts, subtotals, taxes,
+                        Collections.unmodifiableList(documentTaxes), lineExtension.toBigDecimal(), taxAmount.round(),
+                        chargeAmount.compareTo(BigDecimal.ZERO) == 0 ? null : Money.round(chargeAmount));
+    }
+
+    /**
+     * Subtotal of the taxes of the lines with the same tax scheme and tax
+     * type.
+     */
+    public static final class TaxSubtotal
+    {
+
+        private final ITaxEntry taxEntry;
+        private final Money amount = new Money();
+        private final Money taxableAmount = new Money();
+
+        private TaxSubtotal(final ITaxEntry taxEntry)
+        {
+            this.taxEntry = taxEntry;
+        }
+
+        private boolean matches(final ITaxEntry other)
+        {
+            return Objects.equals(taxEntry.getId(), other.getId()) && taxEntry.getTaxType() == other.getTaxType();
+        }
+
+        /**
+         * @return first tax entry of the lines for the tax scheme, it defines
+         *         name, code and percent of the subtotal
+         */
+        public ITaxEntry getTaxEntry()
+        {
+            return taxEntry;
+        }
+
+        public String getId()
+        {
+            return taxEntry.getId();
+        }
+
+        public TaxType getTaxType()
+        {
+            return taxEntry.getTaxType();
+        }
+
+        /**
+         * @return sum of the amounts of the lines, not rounded
+         */
+        public BigDecimal getAmount()
+        {
+            return amount.toBigDecimal();
+        }
+
+        /**
+         * @return sum of the taxable amounts of the lines, not rounded
+         */
+        public BigDecimal getTaxableAmount()
+        {
+            return taxableAmount.toBigDecimal();
+        }
+    }
+
+    /**
+     * Subtotals of one document per tax scheme id and tax type. A document
+     * has only a few tax schemes, so they are looked up in the list. The id
+     * may be <code>null</code> for custom tax entries.
+     */
+    private static final class Subtotals
+    {
+
+        private final List<TaxSubtotal> ordered = new ArrayList<>(4);
+
+        private void add(final ITaxEntry taxEntry)
+        {
+            var subtotal = get(taxEntry);
+            if (subtotal == null) {
+                subtotal = new TaxSubtotal(taxEntry);
+                ordered.add(subtotal);
+            }
+            subtotal.amount.add(taxEntry.getAmount());
+            if (taxEntry.getTaxableAmount() != null) {
+                subtotal.taxableAmount.add(taxEntry.getTaxableAmount());
+            }
+        }
+
+        private TaxSubtotal get(final ITaxEntry taxEntry)
+        {
+            for (final var subtotal : ordered) {
+                if (subtotal.matches(taxEntry)) {
+                    return subtotal;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Difference between the given taxes of the document and the subtotal of
+     * the taxes of the lines for one tax scheme and tax type.
+     */
+    public static final class TaxDifference
+    {
+
+        private final ITaxEntry taxEntry;
+        private final BigDecimal given;
+        private final BigDecimal derived;
+
+        private TaxDifference(final ITaxEntry taxEntry,
+                              final BigDecimal given,
+                              final BigDecimal derived)
+        {
+            this.taxEntry = taxEntry;
+            this.given = given.setScale(2, RoundingMode.HALF_UP);
+            this.derived = derived.setScale(2, RoundingMode.HALF_UP);
+        }
+
+        public String getId()
+        {
+            return taxEntry.getId();
+        }
+
+        public TaxType getTaxType()
+        {
+            return taxEntry.getTaxType();
+        }
+
+        /**
+         * @return amount of the given taxes --> n(12,2)
+         */
+        public BigDecimal getGiven()
+        {
+            return given;
+        }
+
+        /**
+         * @return amount derived from the lines --> n(12,2)
+         */
+        public BigDecimal getDerived()
+        {
+            return derived;
+        }
+
+        /**
+         * @return derived minus given amount
+         */
+        public BigDecimal getDifference()
+        {
+            return derived.subtract(given);
+        }
+
+        @Override
+        public String toString()
+        {
+            return getId() + " " + getTaxType() + ": given " + given + ", derived " + derived;
+        }
+    }
+
+    /**
+     * Tax of the document derived from a subtotal of the taxes of the lines.
+     * Name, code and percent are the ones of the first tax of the lines.
+     */
+    private static final class DerivedTax
+        implements ITaxEntry
+    {
+
+        private final TaxSubtotal subtotal;
+
+        private DerivedTax(final TaxSubtotal subtotal)
+        {
+            this.subtotal = subtotal;
+        }
+
+        @Override
+        public BigDecimal getAmount()
+        {
+            return subtotal.getAmount();
+        }
+
+        @Override
+        public BigDecimal getTaxableAmount()
+        {
+            return subtotal.getTaxableAmount();
+        }
+
+        @Override
+        public BigDecimal getPercent()
+        {
+            return subtotal.taxEntry.getPercent();
+        }
+
+        @Override
+        public String getId()
+        {
+            return subtotal.taxEntry.getId();
+        }
+
+        @Override
+        public String getName()
+        {
+            return subtotal.taxEntry.getName();
+        }
+
+        @Override
+        public String getCode()
+        {
+            return subtotal.taxEntry.getCode();
+        }
+
+        @Override
+        public String getTaxExemptionReasonCode()
+        {
+            return subtotal.taxEntry.getTaxExemptionReasonCode();
+        }
+
+        @Override
+        public TaxType getTaxType()
+        {
+            return subtotal.taxEntry.getTaxType();
+        }
+
+        @Override
+        public boolean isFreeOfCharge()
+        {
+            return subtotal.taxEntry.isFreeOfCharge();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.documents.elements;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.efaps.ubl.documents.interfaces.IAdditionalItemProperty;
+import org.efaps.ubl.documents.interfaces.IAllowanceChargeEntry;
+import org.efaps.ubl.documents.interfaces.ILine;
+import org.efaps.ubl.documents.interfaces.ITaxEntry;
+
+/**
+ * Immutable line, e.g. as built by the {@link LinesBuilder}. The lists are
+ * copied unless they are immutable already, so lines can share them.
+ *
+ * @param sku sku of the item
+ * @param description description of the item
+ * @param uoMCode code of the unit of measure
+ * @param quantity quantity
+ * @param netUnitPrice net price of one unit
+ * @param netPrice net price of the line
+ * @param crossUnitPrice cross price of one unit
+ * @param crossPrice cross price of the line
+ * @param priceType price type, <code>null</code> for "01"
+ * @param taxEntries taxes of the line
+ * @param allowancesCharges allowances and charges of the line
+ * @param additionalItemProperties additional properties of the item
+ */
+public record ImmutableLine(String sku,
+                            String description,
+                            String uoMCode,
+                            BigDecimal quantity,
+                            BigDecimal netUnitPrice,
+                            BigDecimal netPrice,
+                            BigDecimal crossUnitPrice,
+                            BigDecimal crossPrice,
+                            String priceType,
+                            List<ITaxEntry> taxEntries,
+                            List<IAllowanceChargeEntry> allowancesCharges,
+                            List<IAdditionalItemProperty> additionalItemProperties)
+    implements ILine
+{
+
+    public ImmutableLine
+    {
+        taxEntries = taxEntries == null ? List.of() : List.copyOf(taxEntries);
+        allowancesCharges = allowancesCharges == null ? List.of() : List.copyOf(allowancesCharges);
+        additionalItemProperties = additionalItemProperties == null ? List.of()
+                        : List.copyOf(additionalItemProperties);
+    }
+
+    @Override
+    public List<ITaxEntry> getTaxEntries()
+    {
+        return taxEntries;
+    }
+
+    @Override
+    public List<IAllowanceChargeEntry> getAllowancesCharges()
+    {
+        return allowancesCharges;
+    }
+
+    @Override
+    public BigDecimal getNetPrice()
+    {
+        return netPrice;
+    }
+
+    @Override
+    public BigDecimal getCrossPrice()
+    {
+        return crossPrice;
+    }
+
+    @Override
+    public BigDecimal getNetUnitPrice()
+    {
+        return netUnitPrice;
+    }
+
+    @Override
+    public BigDecimal getCrossUnitPrice()
+    {
+        return crossUnitPrice;
+    }
+
+    @Override
+    public String getUoMCode()
+    {
+        return uoMCode;
+    }
+
+    @Override
+    public BigDecimal getQuantity()
+    {
+        return quantity;
+    }
+
+    @Override
+    public String getDescription()
+    {
+        return description;
+    }
+
+    @Override
+    public String getSku()
+    {
+        return sku;
+    }
+
+    @Override
+    public String getPriceType()
+    {
+        return priceType == null ? "01" : priceType;
+    }
+
+    @Override
+    public List<IAdditionalItemProperty> getAdditionalItemProperties()
+    {
+        return additionalItemProperties;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.documents.elements;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.efaps.ubl.documents.interfaces.ILine;
+import org.efaps.ubl.documents.interfaces.ITaxEntry;
+
+/**
+ * Builds the lines of a document from columns, e.g. of an export of an ERP,
+ * without a builder and lists per line. Each column has one value per line,
+ * columns that are not given are <code>null</code> for all lines.
+ *
+ * <pre>
+ * final var lines = LinesBuilder.of(skus, quantities, netUnitPrices)
+ *                 .withDescriptions(descriptions)
+ *                 .withUoMCode("NIU")
+ *                 .withTax(TaxDefinition.IGV, igvAmounts)
+ *                 .build();
+ * </pre>
+ */
+public final class LinesBuilder
+{
+
+    private final int size;
+    private final String[] skus;
+    private final BigDecimal[] quantities;
+    private final BigDecimal[] netUnitPrices;
+    private String[] descriptions;
+    private String[] uoMCodes;
+    private String uoMCode;
+    private BigDecimal[] netPrices;
+    private BigDecimal[] crossUnitPrices;
+    private BigDecimal[] crossPrices;
+    private String priceType;
+    private final List<TaxDefinition> taxDefinitions = new ArrayList<>();
+    private final List<BigDecimal[]> taxAmounts = new ArrayList<>();
+
+    private LinesBuilder(final String[] skus,
+                         final BigDecimal[] quantities,
+                         final BigDecimal[] netUnitPrices)
+    {
+        size = skus.length;
+        this.skus = skus;
+        this.quantities = check(quantities);
+        this.netUnitPrices = check(netUnitPrices);
+    }
+
+    public LinesBuilder withDescriptions(final String[] descriptions)
+    {
+        this.descriptions = check(descriptions);
+        return this;
+    }
+
+    public LinesBuilder withUoMCodes(final String[] uoMCodes)
+    {
+        this.uoMCodes = check(uoMCodes);
+        return this;
+    }
+
+    /**
+     * @param uoMCode code of the unit of measure of all lines
+     * @return this
+     */
+    public LinesBuilder withUoMCode(final String uoMCode)
+    {
+        this.uoMCode = uoMCode;
+        return this;
+    }
+
+    /**
+     * @param netPrices net prices of the lines, if not given quantity times
+     *            net unit price
+     * @return this
+     */
+    public LinesBuilder withNetPrices(final BigDecimal[] netPrices)
+    {
+        this.netPrices = check(netPrices);
+        return this;
+    }
+
+    public LinesBuilder withCrossUnitPrices(final BigDecimal[] crossUnitPrices)
+    {
+        this.crossUnitPrices = check(crossUnitPrices);
+        return this;
+    }
+
+    public LinesBuilder withCrossPrices(final BigDecimal[] crossPrices)
+    {
+        this.crossPrices = check(crossPrices);
+        return this;
+    }
+
+    /**
+     * @param priceType price type of all lines
+     * @return this
+     */
+    public LinesBuilder withPriceType(final String priceType)
+    {
+        this.priceType = priceType;
+        return this;
+    }
+
+    /**
+     * Adds a tax to the lines. The taxable amount is the net price of the
+     * line, lines without amount (<code>null</code>) do not get the tax.
+     *
+     * @param definition definition of the tax
+     * @param amounts amounts of the tax per line
+     * @return this
+     */
+    public LinesBuilder withTax(final TaxDefinition definition,
+                                final BigDecimal[] amounts)
+    {
+        taxDefinitions.add(definition);
+        taxAmounts.add(check(amounts));
+        return this;
+    }
+
+    public List<ILine> build()
+    {
+        final var ret = new ILine[size];
+        final var taxes = new ITaxEntry[taxDefinitions.size()];
+        for (var i = 0; i < size; i++) {
+            final var netPrice = netPrices == null ? quantities[i].multiply(netUnitPrices[i]) : netPrices[i];
+            var taxCount = 0;
+            for (var j = 0; j < taxes.length; j++) {
+                final var amount = taxAmounts.get(j)[i];
+                if (amount != null) {
+                    taxes[taxCount++] = taxDefinitions.get(j).of(amount, netPrice);
+                }
+            }
+            ret[i] = new ImmutableLine(skus[i],
+                            descriptions == null ? null : descriptions[i],
+                            uoMCodes == null ? uoMCode : uoMCodes[i],
+                            quantities[i],
+                            netUnitPrices[i],
+                            netPrice,
+                            crossUnitPrices == null ? null : crossUnitPrices[i],
+                            crossPrices == null ? null : crossPrices[i],
+                            priceType,
+                            taxCount == taxes.length ? List.of(taxes) : List.of(Arrays.copyOf(taxes, taxCount)),
+                            List.of(),
+                            List.of());
+        }
+        return Collections.unmodifiableList(Arrays.asList(ret));
+    }
+
+    private <T> T[] check(final T[] column)
+    {
+        if (column.length != size) {
+            throw new IllegalArgumentException("Expected " + size + " values per column, got " + column.length);
+        }
+        return column;
+    }
+
+    /**
+     * @param skus sku per line
+     * @param quantities quantity per line
+     * @param netUnitPrices net unit price per line
+     * @return new builder
+     */
+    public static LinesBuilder of(final String[] skus,
+                                  final BigDecimal[] quantities,
+                                  final BigDecimal[] netUnitPrices)
+    {
+        return new LinesBuilder(skus, quantities, netUnitPrices);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.documents.elements;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Sum of amounts kept as a long with {@link #SCALE} decimal places, used by
+ * the {@link DocumentTotals} to add and round amounts without creating a
+ * <code>BigDecimal</code> for every intermediate result.
+ * <p>
+ * The result is the same as adding the amounts as <code>BigDecimal</code>
+ * starting with {@link BigDecimal#ZERO}: the largest scale of the added
+ * amounts is kept and used for {@link #toBigDecimal()}. If an amount has more
+ * than {@link #SCALE} decimal places or the sum overflows, the sum continues
+ * as <code>BigDecimal</code>.
+ * </p>
+ */
+final class Money
+{
+
+    /** Decimal places of the long value. */
+    static final int SCALE = 6;
+
+    private static final long[] POWERS = { 1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L };
+
+    /** Units of the n(12,2) amounts. */
+    private static final long CENT = POWERS[SCALE - 2];
+
+    private long units;
+    private int scale;
+    private BigDecimal exact;
+
+    /**
+     * Resets the sum to zero, so that the instance can be reused.
+     *
+     * @return this
+     */
+    Money reset()
+    {
+        units = 0;
+        scale = 0;
+        exact = null;
+        return this;
+    }
+
+    /**
+     * @param amount amount to add
+     * @return this
+     */
+    Money add(final BigDecimal amount)
+    {
+        return add(amount, false);
+    }
+
+    /**
+     * @param amount amount to subtract
+     * @return this
+     */
+    Money subtract(final BigDecimal amount)
+    {
+        return add(amount, true);
+    }
+
+    private Money add(final BigDecimal amount,
+                      final boolean negate)
+    {
+        if (exact == null) {
+            if (fits(amount)) {
+                final var amountUnits = negate ? -toUnits(amount) : toUnits(amount);
+                final var sum = units + amountUnits;
+                // overflow if both have the same sign and the sum has not
+                if (((units ^ sum) & (amountUnits ^ sum)) >= 0) {
+                    units = sum;
+                    scale = Math.max(scale, amount.scale());
+                    return this;
+                }
+            }
+            exact = toBigDecimal();
+        }
+        exact = negate ? exact.subtract(amount) : exact.add(amount);
+        return this;
+    }
+
+    /**
+     * @param other sum to add
+     * @return this
+     */
+    Money add(final Money other)
+    {
+        if (exact == null && other.exact == null) {
+            final var sum = units + other.units;
+            if (((units ^ sum) & (other.units ^ sum)) >= 0) {
+                units = sum;
+                scale = Math.max(scale, other.scale);
+                return this;
+            }
+        }
+        exact = toBigDecimal().add(other.toBigDecimal());
+        return this;
+    }
+
+    /**
+     * @return the sum with the largest scale of the added amounts
+     */
+    BigDecimal toBigDecimal()
+    {
+        return exact == null ? BigDecimal.valueOf(units / POWERS[SCALE - scale], scale) : exact;
+    }
+
+    /**
+     * @return the sum rounded half up to n(12,2)
+     */
+    BigDecimal round()
+    {
+        return exact == null ? BigDecimal.valueOf(roundToCents(units), 2) : exact.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Same as <code>amount.setScale(2, RoundingMode.HALF_UP)</code>.
+     *
+     * @param amount amount to round
+     * @return the amount rounded half up to n(12,2)
+     */
+    static BigDecimal round(final BigDecimal amount)
+    {
+        if (amount.scale() == 2) {
+            return amount;
+        }
+        return fits(amount) ? BigDecimal.valueOf(roundToCents(toUnits(amount)), 2)
+                        : amount.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static long roundToCents(final long units)
+    {
+        final var cents = units / CENT;
+        final var remainder = Math.abs(units % CENT);
+        return remainder * 2 >= CENT ? cents + Long.signum(units) : cents;
+    }
+
+    /**
+     * @param amount amount to check
+     * @return the amount can be converted to units of {@link #SCALE} decimal
+     *         places without overflow
+     */
+    private static boolean fits(final BigDecimal amount)
+    {
+        final var amountScale = amount.scale();
+        return amountScale >= 0 && amountScale <= SCALE && amount.precision() <= 18 - SCALE + amountScale;
+    }
+
+    private static long toUnits(final BigDecimal amount)
+    {
+        final var amountScale = amount.scale();
+        // integral amounts are converted without the unscaled BigInteger
+        final var unscaled = amountScale == 0 ? amount.longValue() : amount.unscaledValue().longValue();
+        return unscaled * POWERS[SCALE - amountScale];
+    }
+}
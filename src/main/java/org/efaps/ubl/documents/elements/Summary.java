@@ -23,12 +23,12 @@ import java.util.List;
 
 import org.efaps.ubl.documents.interfaces.ISummaryLine;
 import org.efaps.ubl.documents.interfaces.ISupplier;
-import org.efaps.ubl.extension.Definitions;
 import org.efaps.ubl.extension.SummaryDocumentsType;
+import org.efaps.ubl.instrumentation.Instrumentations;
 import org.efaps.ubl.marshaller.DocumentMarshaller;
+import org.efaps.ubl.marshaller.DocumentType;
+import org.w3c.dom.Document;
 
-import com.helger.ubl21.CUBL21;
-import com.helger.ubl21.UBL21NamespaceContext;
 
 public class Summary
 {
@@ -39,6 +39,8 @@ public class Summary
     private ISupplier supplier;
     private List<ISummaryLine> lines;
     private Charset encoding = StandardCharsets.UTF_8;
+    private boolean formattedOutput = true;
+    private boolean parallel;
 
     public List<ISummaryLine> getLines()
     {
@@ -114,14 +116,62 @@ public class Summary
         this.encoding = encoding;
     }
 
+    public boolean isFormattedOutput()
+    {
+        return formattedOutput;
+    }
+
+    /**
+     * @param formattedOutput indent the xml returned by {@link #getUBLXml()},
+     *            default <code>true</code>
+     * @return this
+     */
+    public Summary setFormattedOutput(final boolean formattedOutput)
+    {
+        this.formattedOutput = formattedOutput;
+        return this;
+    }
+
+    public boolean isParallel()
+    {
+        return parallel;
+    }
+
+    /**
+     * @param parallel convert the lines in parallel in the common fork/join
+     *            pool, the line ids still follow the order of the lines,
+     *            default <code>false</code>
+     * @return this
+     */
+    public Summary setParallel(final boolean parallel)
+    {
+        this.parallel = parallel;
+        return this;
+    }
+
     public String getUBLXml()
     {
-        UBL21NamespaceContext.getInstance().setDefaultNamespaceURI(Definitions.NAMESPACE_SUMMARY);
-        if (!UBL21NamespaceContext.getInstance().getPrefixToNamespaceURIMap().containsKey("sac")) {
-            UBL21NamespaceContext.getInstance().addMapping("sac", Definitions.NAMESPACE_SUNATAGGREGATE);
-            UBL21NamespaceContext.getInstance().removeMapping("cec");
-            UBL21NamespaceContext.getInstance().addMapping("ext", CUBL21.XML_SCHEMA_CEC_NAMESPACE_URL);
-        }
+        return Instrumentations.generate(DocumentType.SUMMARY_DOCUMENTS, getNumber(),
+                        lines == null ? 0 : lines.size(), getEncoding(), this::createSummaryDocuments,
+                        summary -> DocumentMarshaller.summary()
+                                        .setCharset(getEncoding())
+                                        .setFormattedOutput(isFormattedOutput())
+                                        .getAsString(summary));
+    }
+
+    /**
+     * Gets the UBL as DOM document, e.g. to sign it without serializing it
+     * first.
+     *
+     * @return the UBL document
+     */
+    public Document getUBLDocument()
+    {
+        return DocumentMarshaller.summary().getAsDocument(createSummaryDocuments());
+    }
+
+    protected SummaryDocumentsType createSummaryDocuments()
+    {
         final var summary = new SummaryDocumentsType();
         summary.setUBLVersionID("2.0");
         summary.setID(getNumber());
@@ -129,14 +179,7 @@ public class Summary
         summary.setIssueDate(getIssueDate());
         summary.addSignature(Utils.getSignature(getSupplier()));
         summary.setAccountingSupplierParty(Utils.getSupplier(getSupplier()));
-        summary.setSummaryDocumentsLines(Utils.getSummaryLines(getLines()));
-
-        final var ret = DocumentMarshaller.summary()
-                        .setCharset(getEncoding())
-                        .setFormattedOutput(true)
-                        .getAsString(summary);
-
-        UBL21NamespaceContext.getInstance().removeMapping("");
-        return ret;
+        summary.setSummaryDocumentsLines(Utils.getSummaryLines(getLines(), isParallel()));
+        return summary;
     }
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.documents.elements;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.efaps.ubl.documents.interfaces.ICustomer;
+import org.efaps.ubl.documents.interfaces.ISummaryLine;
+import org.efaps.ubl.documents.interfaces.ITaxEntry;
+
+import oasis.names.specification.ubl.schema.xsd.invoice_21.InvoiceType;
+
+/**
+ * Immutable line of a summary holding only the values of a receipt that the
+ * summary needs, so that the receipt itself can be discarded after reading
+ * it.
+ */
+public final class SummaryLine
+    implements ISummaryLine
+{
+
+    private final String docType;
+    private final String number;
+    private final ICustomer customer;
+    private final BigDecimal crossTotal;
+    private final BigDecimal netTotal;
+    private final List<ITaxEntry> taxEntries;
+
+    SummaryLine(final String docType,
+                final String number,
+                final ICustomer customer,
+                final BigDecimal crossTotal,
+                final BigDecimal netTotal,
+                final List<ITaxEntry> taxEntries)
+    {
+        this.docType = docType;
+        this.number = number;
+        this.customer = customer;
+        this.crossTotal = crossTotal;
+        this.netTotal = netTotal;
+        this.taxEntries = Collections.unmodifiableList(taxEntries);
+    }
+
+    @Override
+    public String getDocType()
+    {
+        return docType;
+    }
+
+    @Override
+    public String getNumber()
+    {
+        return number;
+    }
+
+    @Override
+    public ICustomer getCustomer()
+    {
+        return customer;
+    }
+
+    @Override
+    public BigDecimal getCrossTotal()
+    {
+        return crossTotal;
+    }
+
+    @Override
+    public BigDecimal getNetTotal()
+    {
+        return netTotal;
+    }
+
+    @Override
+    public List<ITaxEntry> getTaxEntries()
+    {
+        return taxEntries;
+    }
+
+    @Override
+    public String toString()
+    {
+        return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+    }
+
+    /**
+     * Copies the values needed for a summary from the receipt.
+     *
+     * @param invoice receipt to read
+     * @return new line
+     */
+    public static SummaryLine of(final InvoiceType invoice)
+    {
+        final var party = invoice.getAccountingCustomerParty().getParty();
+        final var identification = party.getPartyIdentificationAtIndex(0).getID();
+        final var customer = new Customer();
+        customer.setDoiType(identification.getSchemeID());
+        customer.setDOI(identification.getValue());
+        customer.setName(party.getPartyLegalEntityAtIndex(0).getRegistrationNameValue());
+        final var entries = new ArrayList<ITaxEntry>(invoice.getTaxTotalCount());
+        for (final var taxTotal : invoice.getTaxTotal()) {
+            final var subtotal = taxTotal.getTaxSubtotalAtIndex(0);
+            final var category = subtotal.getTaxCategory();
+            final var scheme = category.getTaxScheme();
+            entries.add(new TaxEntry(taxTotal.getTaxAmountValue(), subtotal.getTaxableAmountValue(),
+                            scheme.getIDValue(), scheme.getNameValue(), scheme.getTaxTypeCodeValue(),
+                            category.getTaxExemptionReasonCodeValue()));
+        }
+        return new SummaryLine(invoice.getInvoiceTypeCodeValue(), invoice.getIDValue(), customer,
+                        invoice.getLegalMonetaryTotal().getPayableAmountValue(),
+                        invoice.getLegalMonetaryTotal().getTaxExclusiveAmountValue(), entries);
+    }
+
+    static final class TaxEntry
+        implements ITaxEntry
+    {
+
+        private final BigDecimal amount;
+        private final BigDecimal taxableAmount;
+        private final String id;
+        private final String name;
+        private final String code;
+        private final String taxExemptionReasonCode;
+
+        TaxEntry(final BigDecimal amount,
+                 final BigDecimal taxableAmount,
+                 final String id,
+                 final String name,
+                 final String code,
+                 final String taxExemptionReasonCode)
+        {
+            this.amount = amount;
+            this.taxableAmount = taxableAmount;
+            this.id = id;
+            this.name = name;
+            this.code = code;
+            this.taxExemptionReasonCode = taxExemptionReasonCode;
+        }
+
+        @Override
+        public BigDecimal getAmount()
+        {
+            return amount;
+        }
+
+        @Override
+        public BigDecimal getTaxableAmount()
+        {
+            return taxableAmount;
+        }
+
+        @Override
+        public BigDecimal getPercent()
+        {
+            return null;
+        }
+
+        @Override
+        public String getId()
+        {
+            return id;
+        }
+
+        @Override
+        public String getName()
+        {
+            return name;
+        }
+
+        @Override
+        public String getCode()
+        {
+            return code;
+        }
+
+        @Override
+        public String getTaxExemptionReasonCode()
+        {
+            return taxExemptionReasonCode;
+        }
+
+        @Override
+        public String toString()
+        {
+            return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.documents.elements;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.efaps.ubl.documents.interfaces.ITaxEntry;
+
+import com.helger.ubl21.CUBL21;
+
+/**
+ * Reads the values needed for a {@link SummaryLine} directly from the xml of
+ * a receipt with a pull parser instead of unmarshalling the whole document.
+ * Elements that are not needed are skipped without materializing them, and
+ * as the <code>cac:InvoiceLine</code> elements are the last ones of an
+ * invoice, reading stops at the first line once the
+ * <code>cac:LegalMonetaryTotal</code> was read.
+ */
+public final class SummaryLineReader
+{
+
+    private static final String CAC = CUBL21.XML_SCHEMA_CAC_NAMESPACE_URL;
+    private static final String CBC = CUBL21.XML_SCHEMA_CBC_NAMESPACE_URL;
+
+    /** Thread-safe once configured. */
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private SummaryLineReader()
+    {
+    }
+
+    /**
+     * Reads the summary line from the stream, which is not closed.
+     *
+     * @param in stream containing the xml of a receipt
+     * @return new line
+     * @throws XMLStreamException the xml could not be read
+     */
+    public static SummaryLine read(final InputStream in)
+        throws XMLStreamException
+    {
+        return read(FACTORY.createXMLStreamReader(in));
+    }
+
+    /**
+     * Reads the summary line from the xml.
+     *
+     * @param xml xml of a receipt
+     * @return new line
+     * @throws XMLStreamException the xml could not be read
+     */
+    public static SummaryLine read(final String xml)
+        throws XMLStreamException
+    {
+        return read(FACTORY.createXMLStreamReader(new StringReader(xml)));
+    }
+
+    private static SummaryLine read(final XMLStreamReader reader)
+        throws XMLStreamException
+    {
+        try {
+            final var values = new Values();
+            reader.nextTag();
+            while (!values.complete && reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                if (is(reader, CBC, "ID")) {
+                    values.number = reader.getElementText();
+                } else if (is(reader, CBC, "InvoiceTypeCode")) {
+                    values.docType = reader.getElementText();
+                } else if (is(reader, CAC, "AccountingCustomerParty")) {
+                    children(reader, party -> {
+                        if (is(party, CAC, "Party")) {
+                            readParty(party, values);
+                        } else {
+                            skip(party);
+                        }
+                    });
+                } else if (is(reader, CAC, "TaxTotal")) {
+                    values.taxEntries.add(readTaxTotal(reader));
+                } else if (is(reader, CAC, "LegalMonetaryTotal")) {
+                    children(reader, total -> {
+                        if (is(total, CBC, "PayableAmount")) {
+                            values.crossTotal = new BigDecimal(total.getElementText().trim());
+                        } else if (is(total, CBC, "TaxExclusiveAmount")) {
+                            values.netTotal = new BigDecimal(total.getElementText().trim());
+                        } else {
+                            skip(total);
+                        }
+                    });
+                    values.totals = true;
+                } else if (is(reader, CAC, "InvoiceLine") && values.totals) {
+                    values.complete = true;
+                } else {
+                    skip(reader);
+                }
+            }
+            return new SummaryLine(values.docType, values.number, values.customer, values.crossTotal,
+                            values.netTotal, values.taxEntries);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void readParty(final XMLStreamReader reader,
+                                  final Values values)
+        throws XMLStreamException
+    {
+        final var customer = values.customer;
+        children(reader, party -> {
+            if (!values.identification && is(party, CAC, "PartyIdentification")) {
+                values.identification = true;
+                children(party, identification -> {
+                    if (is(identification, CBC, "ID")) {
+                        customer.setDoiType(identification.getAttributeValue(null, "schemeID"));
+                        customer.setDOI(identification.getElementText());
+                    } else {
+                        skip(identification);
+                    }
+                });
+            } else if (!values.legalEntity && is(party, CAC, "PartyLegalEntity")) {
+                values.legalEntity = true;
+                children(party, legalEntity -> {
+                    if (is(legalEntity, CBC, "RegistrationName")) {
+                        customer.setName(legalEntity.getElementText());
+                    } else {
+                        skip(legalEntity);
+                    }
+                });
+            } else {
+                skip(party);
+            }
+        });
+    }
+
+    private static ITaxEntry readTaxTotal(final XMLStreamReader reader)
+        throws XMLStreamException
+    {
+        final var tax = new TaxValues();
+        children(reader, total -> {
+            if (is(total, CBC, "TaxAmount")) {
+                tax.amount = new BigDecimal(total.getElementText().trim());
+            } else if (!tax.subtotal && is(total, CAC, "TaxSubtotal")) {
+                tax.subtotal = true;
+                children(total, subtotal -> {
+                    if (is(subtotal, CBC, "TaxableAmount")) {
+                        tax.taxableAmount = new BigDecimal(subtotal.getElementText().trim());
+                    } else if (is(subtotal, CAC, "TaxCategory")) {
+                        children(subtotal, category -> {
+                            if (is(category, CBC, "TaxExemptionReasonCode")) {
+                                tax.taxExemptionReasonCode = category.getElementText();
+                            } else if (is(category, CAC, "TaxScheme")) {
+                                children(category, scheme -> {
+                                    if (is(scheme, CBC, "ID")) {
+                                        tax.id = scheme.getElementText();
+                                    } else if (is(scheme, CBC, "Name")) {
+                                        tax.name = scheme.getElementText();
+                                    } else if (is(scheme, CBC, "TaxTypeCode")) {
+                                        tax.code = scheme.getElementText();
+                                    } else {
+                                        skip(scheme);
+                                    }
+                                });
+                            } else {
+                                skip(category);
+                            }
+                        });
+                    } else {
+                        skip(subtotal);
+                    }
+                });
+            } else {
+                skip(total);
+            }
+        });
+        return new SummaryLine.TaxEntry(tax.amount, tax.taxableAmount, tax.id, tax.name, tax.code,
+                        tax.taxExemptionReasonCode);
+    }
+
+    private static boolean is(final XMLStreamReader reader,
+                              final String namespace,
+                              final String localName)
+    {
+        return localName.equals(reader.getLocalName()) && namespace.equals(reader.getNamespaceURI());
+    }
+
+    /**
+     * Passes each child element of the current element to the handler, which
+     * must consume it up to its end tag.
+     */
+    private static void children(final XMLStreamReader reader,
+                                 final ElementHandler handler)
+        throws XMLStreamException
+    {
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            handler.handle(reader);
+        }
+    }
+
+    /**
+     * Moves to the end tag of the current element.
+     */
+    private static void skip(final XMLStreamReader reader)
+        throws XMLStreamException
+    {
+        var depth = 1;
+        while (depth > 0) {
+            final var event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static XMLInputFactory createFactory()
+    {
+        final var ret = XMLInputFactory.newDefaultFactory();
+        ret.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        ret.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return ret;
+    }
+
+    @FunctionalInterface
+    private interface ElementHandler
+    {
+
+        void handle(XMLStreamReader reader)
+            throws XMLStreamException;
+    }
+
+    private static final class Values
+    {
+
+        private final Customer customer = new Customer();
+        private final List<ITaxEntry> taxEntries = new ArrayList<>();
+        private String docType;
+        private String number;
+        private BigDecimal crossTotal;
+        private BigDecimal netTotal;
+        private boolean identification;
+        private boolean legalEntity;
+        private boolean totals;
+        private boolean complete;
+    }
+
+    private static final class TaxValues
+    {
+
+        private BigDecimal amount;
+        private BigDecimal taxableAmount;
+        private String id;
+        private String name;
+        private String code;
+        private String taxExemptionReasonCode;
+        private boolean subtotal;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.documents.elements;
+
+import java.math.BigDecimal;
+
+import org.efaps.ubl.documents.interfaces.ITaxEntry;
+import org.efaps.ubl.documents.values.TaxType;
+
+/**
+ * Immutable tax entry of one of the {@link TaxDefinition}s.
+ *
+ * <pre>
+ * final var tax = TaxDefinition.IGV.of(new BigDecimal("18"), new BigDecimal("100"));
+ * </pre>
+ *
+ * @param definition definition of the tax
+ * @param amount amount of the tax
+ * @param taxableAmount taxable amount of the tax
+ */
+public record Tax(TaxDefinition definition,
+                  BigDecimal amount,
+                  BigDecimal taxableAmount)
+    implements ITaxEntry
+{
+
+    @Override
+    public BigDecimal getAmount()
+    {
+        return amount;
+    }
+
+    @Override
+    public BigDecimal getTaxableAmount()
+    {
+        return taxableAmount;
+    }
+
+    @Override
+    public BigDecimal getPercent()
+    {
+        return definition.getPercent();
+    }
+
+    @Override
+    public String getId()
+    {
+        return definition.getId();
+    }
+
+    @Override
+    public String getName()
+    {
+        return definition.getName();
+    }
+
+    @Override
+    public String getCode()
+    {
+        return definition.getCode();
+    }
+
+    @Override
+    public String getTaxExemptionReasonCode()
+    {
+        return definition.getTaxExemptionReasonCode();
+    }
+
+    @Override
+    public TaxType getTaxType()
+    {
+        return definition.getTaxType();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.documents.elements;
+
+import java.math.BigDecimal;
+
+import org.efaps.ubl.documents.values.TaxType;
+
+/**
+ * Definitions of the taxes that are known by the library. The definitions
+ * are shared by all tax entries, including their percent.
+ */
+public enum TaxDefinition
+{
+    IGV("1000", "IGV", "VAT", new BigDecimal("18"), "40", TaxType.ADVALOREM),
+    GRA("9996", "GRA", "FRE", new BigDecimal("18"), "40", TaxType.ADVALOREM),
+    ICB("9999", "OTROS", "OTH", BigDecimal.ZERO, null, TaxType.PERUNIT);
+
+    private final String id;
+    private final String taxName;
+    private final String code;
+    private final BigDecimal percent;
+    private final String taxExemptionReasonCode;
+    private final TaxType taxType;
+
+    TaxDefinition(final String id,
+                  final String taxName,
+                  final String code,
+                  final BigDecimal percent,
+                  final String taxExemptionReasonCode,
+                  final TaxType taxType)
+    {
+        this.id = id;
+        this.taxName = taxName;
+        this.code = code;
+        this.percent = percent;
+        this.taxExemptionReasonCode = taxExemptionReasonCode;
+        this.taxType = taxType;
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public String getName()
+    {
+        return taxName;
+    }
+
+    public String getCode()
+    {
+        return code;
+    }
+
+    public BigDecimal getPercent()
+    {
+        return percent;
+    }
+
+    public String getTaxExemptionReasonCode()
+    {
+        return taxExemptionReasonCode;
+    }
+
+    public TaxType getTaxType()
+    {
+        return taxType;
+    }
+
+    /**
+     * @param amount amount of the tax
+     * @param taxableAmount taxable amount of the tax
+     * @return new immutable tax entry
+     */
+    public Tax of(final BigDecimal amount,
+                  final BigDecimal taxableAmount)
+    {
+        return new Tax(this, amount, taxableAmount);
+    }
+}
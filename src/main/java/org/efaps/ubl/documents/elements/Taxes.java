@@ -21,18 +21,14 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.efaps.ubl.documents.interfaces.ITaxEntry;
-import org.efaps.ubl.documents.values.Catalogs;
 import org.efaps.ubl.documents.values.TaxType;
 
 import oasis.names.specification.ubl.schema.xsd.commonaggregatecomponents_21.TaxCategoryType;
-import oasis.names.specification.ubl.schema.xsd.commonaggregatecomponents_21.TaxSchemeType;
 import oasis.names.specification.ubl.schema.xsd.commonaggregatecomponents_21.TaxSubtotalType;
 import oasis.names.specification.ubl.schema.xsd.commonaggregatecomponents_21.TaxTotalType;
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.BaseUnitMeasureType;
-import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.IDType;
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.PerUnitAmountType;
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.TaxAmountType;
-import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.TaxExemptionReasonCodeType;
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.TaxableAmountType;
 
 public class Taxes
@@ -40,6 +36,23 @@ public class Taxes
 
     public static List<TaxTotalType> getTaxTotal(final List<ITaxEntry> taxEntries,
                                                  final boolean isItem)
+    {
+        return getTaxTotal(taxEntries, isItem, taxEntries.stream()
+                        .map(entry -> (entry.isFreeOfCharge() ? BigDecimal.ZERO : entry.getAmount()))
+                        .reduce(BigDecimal.ZERO, BigDecimal::add)
+                        .setScale(2, RoundingMode.HALF_UP));
+    }
+
+    /**
+     * @param taxEntries entries of the subtotals
+     * @param isItem for a line
+     * @param taxAmount TaxAmount of the total as evaluated by the
+     *            {@link DocumentTotals}
+     * @return the TaxTotal
+     */
+    public static List<TaxTotalType> getTaxTotal(final List<ITaxEntry> taxEntries,
+                                                 final boolean isItem,
+                                                 final BigDecimal taxAmount)
     {
         // /Invoice/cac:InvoiceLine/cac:TaxTotal/cbc:TaxAmount (Monto total de
         // tributos del ítem) -> n(12,2)
@@ -52,11 +65,7 @@ public class Taxes
             subTotals.add(getTaxSubtotal(taxEntry, isItem));
         }
         taxTotal.setTaxSubtotal(subTotals);
-
-        taxTotal.setTaxAmount(Utils.getAmount(TaxAmountType.class, taxEntries.stream()
-                        .map(entry -> (entry.isFreeOfCharge() ? BigDecimal.ZERO : entry.getAmount()))
-                        .reduce(BigDecimal.ZERO, BigDecimal::add)
-                        .setScale(2, RoundingMode.HALF_UP)));
+        taxTotal.setTaxAmount(Utils.getAmount(TaxAmountType.class, taxAmount));
         return ret;
     }
 
@@ -97,12 +106,8 @@ public class Taxes
         if (TaxType.ADVALOREM.equals(taxEntry.getTaxType())) {
             ret.setPercent(taxEntry.getPercent());
             if (isItem) {
-                final var taxExemptionReasonCode = new TaxExemptionReasonCodeType();
-                taxExemptionReasonCode.setListAgencyName(Utils.AGENCYNAME);
-                taxExemptionReasonCode.setListName(Catalogs.AIGV.getName());
-                taxExemptionReasonCode.setListURI(Catalogs.AIGV.getURI());
-                taxExemptionReasonCode.setValue(taxEntry.getTaxExemptionReasonCode());
-                ret.setTaxExemptionReasonCode(taxExemptionReasonCode);
+                ret.setTaxExemptionReasonCode(
+                                CatalogCodes.getTaxExemptionReasonCode(taxEntry.getTaxExemptionReasonCode()));
             }
         }
 
@@ -113,16 +118,7 @@ public class Taxes
             }
         }
 
-        final var taxScheme = new TaxSchemeType();
-        final var idType = new IDType();
-        idType.setSchemeAgencyName(Utils.AGENCYNAME);
-        idType.setSchemeName(Catalogs.TAX.getName());
-        idType.setSchemeURI(Catalogs.TAX.getURI());
-        idType.setValue(taxEntry.getId());
-        taxScheme.setID(idType);
-        taxScheme.setName(taxEntry.getName());
-        taxScheme.setTaxTypeCode(taxEntry.getCode());
-        ret.setTaxScheme(taxScheme);
+        ret.setTaxScheme(CatalogCodes.getTaxScheme(taxEntry));
         return ret;
     }
 
@@ -165,31 +161,31 @@ public class Taxes
         @Override
         public BigDecimal getPercent()
         {
-            return new BigDecimal("18");
+            return TaxDefinition.IGV.getPercent();
         }
 
         @Override
         public String getId()
         {
-            return "1000";
+            return TaxDefinition.IGV.getId();
         }
 
         @Override
         public String getName()
         {
-            return "IGV";
+            return TaxDefinition.IGV.getName();
         }
 
         @Override
         public String getCode()
         {
-            return "VAT";
+            return TaxDefinition.IGV.getCode();
         }
 
         @Override
         public String getTaxExemptionReasonCode()
         {
-            return "40";
+            return TaxDefinition.IGV.getTaxExemptionReasonCode();
         }
     }
 
@@ -200,31 +196,31 @@ public class Taxes
         @Override
         public BigDecimal getPercent()
         {
-            return new BigDecimal("18");
+            return TaxDefinition.GRA.getPercent();
         }
 
         @Override
         public String getId()
         {
-            return "9996";
+            return TaxDefinition.GRA.getId();
         }
 
         @Override
         public String getName()
         {
-            return "GRA";
+            return TaxDefinition.GRA.getName();
         }
 
         @Override
         public String getCode()
         {
-            return "FRE";
+            return TaxDefinition.GRA.getCode();
         }
 
         @Override
         public String getTaxExemptionReasonCode()
         {
-            return "40";
+            return TaxDefinition.GRA.getTaxExemptionReasonCode();
         }
     }
 
@@ -235,37 +231,37 @@ public class Taxes
         @Override
         public BigDecimal getPercent()
         {
-            return new BigDecimal("0");
+            return TaxDefinition.ICB.getPercent();
         }
 
         @Override
         public String getId()
         {
-            return "9999";
+            return TaxDefinition.ICB.getId();
         }
 
         @Override
         public String getName()
         {
-            return "OTROS";
+            return TaxDefinition.ICB.getName();
         }
 
         @Override
         public String getCode()
         {
-            return "OTH";
+            return TaxDefinition.ICB.getCode();
         }
 
         @Override
         public String getTaxExemptionReasonCode()
         {
-            return null;
+            return TaxDefinition.ICB.getTaxExemptionReasonCode();
         }
 
         @Override
         public TaxType getTaxType()
         {
-            return TaxType.PERUNIT;
+            return TaxDefinition.ICB.getTaxType();
         }
     }
 
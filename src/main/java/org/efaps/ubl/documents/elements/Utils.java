@@ -17,16 +17,16 @@ package org.efaps.ubl.documents.elements;
 
 import java.lang.reflect.InvocationTargetException;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
+import java.util.RandomAccess;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.efaps.ubl.documents.interfaces.IAdditionalItemProperty;
 import org.efaps.ubl.documents.interfaces.IAddress;
-import org.efaps.ubl.documents.interfaces.IAllowanceChargeEntry;
 import org.efaps.ubl.documents.interfaces.ICarrier;
 import org.efaps.ubl.documents.interfaces.ICustomer;
 import org.efaps.ubl.documents.interfaces.IDriver;
@@ -36,7 +36,6 @@ import org.efaps.ubl.documents.interfaces.IPaymentTerms;
 import org.efaps.ubl.documents.interfaces.IPerson;
 import org.efaps.ubl.documents.interfaces.ISummaryLine;
 import org.efaps.ubl.documents.interfaces.ISupplier;
-import org.efaps.ubl.documents.interfaces.ITaxEntry;
 import org.efaps.ubl.documents.values.Catalogs;
 import org.efaps.ubl.documents.values.CreditNoteTypeCode;
 import org.efaps.ubl.extension.BillingPaymentType;
@@ -88,7 +87,6 @@ import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.Invoice
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.InvoicedQuantityType;
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.LineExtensionAmountType;
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.LineIDType;
-import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.NameCodeType;
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.NoteType;
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.PaidAmountType;
 import oasis.names.specification.ubl.schema.xsd.commonbasiccomponents_21.PaymentDueDateType;
@@ -157,10 +155,7 @@ public class Utils
 
     public static String getWords4Number(final BigDecimal _amount)
     {
-        return new StringBuilder().append(org.efaps.number2words.Converter.getMaleConverter(
-                        new Locale("es")).convert(_amount.longValue())).append(" y ")
-                        .append(_amount.setScale(2, RoundingMode.HALF_UP).toPlainString().replaceAll("^.*\\.", ""))
-                        .append("/100 ").toString().toUpperCase();
+        return AmountWords.get(_amount);
     }
 
     public static <T extends AmountType> T getAmount(final Class<T> type,
@@ -323,6 +318,13 @@ public class Utils
     }
 
     public static List<InvoiceLineType> getInvoiceLines(final List<ILine> lines)
+    {
+        return getInvoiceLines(lines, DocumentTotals.of(lines, Collections.emptyList(), Collections.emptyList(),
+                        null, false));
+    }
+
+    public static List<InvoiceLineType> getInvoiceLines(final List<ILine> lines,
+                                                        final DocumentTotals totals)
     {
         final var ret = new ArrayList<InvoiceLineType>();
         var idx = 1;
@@ -333,29 +335,17 @@ public class Utils
             invoiceLine.setInvoicedQuantity(getInvoicedQuantity(line));
             // /Invoice/cac:InvoiceLine/cbc:LineExtensionAmount --> n(12,2)
             invoiceLine.setLineExtensionAmount(getAmount(LineExtensionAmountType.class,
-                            line.getNetPrice().setScale(2, RoundingMode.HALF_UP)));
+                            totals.getLineExtension(idx - 1)));
 
             final var pricingReference = new PricingReferenceType();
-            // Precio de Venta Unitario = (Valor de venta por ítem + Monto total
-            // de tributos del ítem
-            // + Cargo no afecto por ítem - Descuento no afecto por ítem) /
-            // Cantidad de unidades por ítem
-            final var conditionPrice = line.getNetPrice()
-                            .add(line.getTaxEntries().stream()
-                                            .map(entry -> entry.isFreeOfCharge() ? BigDecimal.ZERO : entry.getAmount())
-                                            .reduce(BigDecimal.ZERO, BigDecimal::add))
-                            .add(line.getAllowancesCharges().stream().map(IAllowanceChargeEntry::getAmount).reduce(
-                                            BigDecimal.ZERO, BigDecimal::add))
-                            .divide(line.getQuantity(), RoundingMode.HALF_UP);
-
             final var priceType = new PriceType();
-            priceType.setPriceAmount(getAmount(PriceAmountType.class, conditionPrice));
+            priceType.setPriceAmount(getAmount(PriceAmountType.class, totals.getConditionPrice(idx - 1)));
 
             priceType.setPriceTypeCode(getPriceTypeCode(line));
             pricingReference.setAlternativeConditionPrice(Collections.singletonList(priceType));
             invoiceLine.setPricingReference(pricingReference);
 
-            invoiceLine.setTaxTotal(Taxes.getTaxTotal(line.getTaxEntries(), true));
+            invoiceLine.setTaxTotal(Taxes.getTaxTotal(line.getTaxEntries(), true, totals.getLineTaxAmount(idx - 1)));
             invoiceLine.setItem(getItem(line));
 
             final var priceType2 = new PriceType();
@@ -368,15 +358,17 @@ public class Utils
 
     public static PriceTypeCodeType getPriceTypeCode(final ILine line)
     {
-        final var ret = new PriceTypeCodeType();
-        ret.setListAgencyName(AGENCYNAME);
-        ret.setListName("Tipo de Precio");
-        ret.setListURI("urn:pe:gob:sunat:cpe:see:gem:catalogos:catalogo16");
-        ret.setValue(line.getPriceType());
-        return ret;
+        return CatalogCodes.getPriceTypeCode(line.getPriceType());
     }
 
     public static List<CreditNoteLineType> getCreditNoteLines(final List<ILine> lines)
+    {
+        return getCreditNoteLines(lines, DocumentTotals.of(lines, Collections.emptyList(), Collections.emptyList(),
+                        null, true));
+    }
+
+    public static List<CreditNoteLineType> getCreditNoteLines(final List<ILine> lines,
+                                                              final DocumentTotals totals)
     {
         final var ret = new ArrayList<CreditNoteLineType>();
         var idx = 1;
@@ -387,27 +379,17 @@ public class Utils
             creditNoteLine.setCreditedQuantity(getCreditedQuantity(line));
             // //CreditNote/cac:CreditNoteLine/cbc:LineExtensionAmount  --> n(12,2)
             creditNoteLine.setLineExtensionAmount(getAmount(LineExtensionAmountType.class,
-                            line.getNetPrice().setScale(2, RoundingMode.HALF_UP)));
+                            totals.getLineExtension(idx - 1)));
 
             final var pricingReference = new PricingReferenceType();
-            // Precio de Venta Unitario = (Valor de venta por ítem + Monto total
-            // de tributos del ítem
-            // + Cargo no afecto por ítem - Descuento no afecto por ítem) /
-            // Cantidad de unidades por ítem
-            final var conditionPrice = line.getNetPrice()
-                            .add(line.getTaxEntries().stream().map(ITaxEntry::getAmount).reduce(BigDecimal.ZERO,
-                                            BigDecimal::add))
-                            .add(line.getAllowancesCharges().stream().map(IAllowanceChargeEntry::getAmount).reduce(
-                                            BigDecimal.ZERO, BigDecimal::add))
-                            .divide(line.getQuantity(), RoundingMode.HALF_UP);
-
             final var priceType = new PriceType();
-            priceType.setPriceAmount(getAmount(PriceAmountType.class, conditionPrice));
+            priceType.setPriceAmount(getAmount(PriceAmountType.class, totals.getConditionPrice(idx - 1)));
             priceType.setPriceTypeCode(getPriceTypeCode(line));
             pricingReference.setAlternativeConditionPrice(Collections.singletonList(priceType));
             creditNoteLine.setPricingReference(pricingReference);
 
-            creditNoteLine.setTaxTotal(Taxes.getTaxTotal(line.getTaxEntries(), true));
+            creditNoteLine.setTaxTotal(Taxes.getTaxTotal(line.getTaxEntries(), true,
+                            totals.getLineTaxAmount(idx - 1)));
             creditNoteLine.setItem(getItem(line));
 
             final var priceType2 = new PriceType();
@@ -487,12 +469,7 @@ public class Utils
         switch (prop.type()) {
             case NORMALIZED: {
                 itemPropertyType.setName("Indicador de bien normalizado");
-                final var nameCodeType = new NameCodeType();
-                nameCodeType.setListAgencyName(AGENCYNAME);
-                nameCodeType.setListName(Catalogs.ITEMPROP.getName());
-                nameCodeType.setListURI(Catalogs.ITEMPROP.getURI());
-                nameCodeType.setValue("7022");
-                itemPropertyType.setNameCode(nameCodeType);
+                itemPropertyType.setNameCode(CatalogCodes.getItemPropertyNameCode("7022"));
                 itemPropertyType.setValue("0");
             }
                 break;
@@ -504,12 +481,7 @@ public class Utils
 
     public static AllowanceChargeReasonCodeType getAllowanceChargeReasonCode(final String reason)
     {
-        final var allowanceChargeReasonCodeType = new AllowanceChargeReasonCodeType();
-        allowanceChargeReasonCodeType.setListAgencyName(AGENCYNAME);
-        allowanceChargeReasonCodeType.setListName(Catalogs.CADE.getName());
-        allowanceChargeReasonCodeType.setListURI(Catalogs.CADE.getURI());
-        allowanceChargeReasonCodeType.setValue(reason);
-        return allowanceChargeReasonCodeType;
+        return CatalogCodes.getAllowanceChargeReasonCode(reason);
     }
 
     public static List<PaymentTermsType> getPaymentTerms(final IPaymentTerms paymentTerms)
@@ -582,54 +554,72 @@ public class Utils
 
     public static List<SummaryDocumentsLineType> getSummaryLines(final List<ISummaryLine> lines)
     {
-        final var ret = new ArrayList<SummaryDocumentsLineType>();
-        var idx = 1;
-        for (final var line: lines) {
-            final var type = new SummaryDocumentsLineType();
-            ret.add(type);
-            type.setLineId(new LineIDType(String.valueOf(idx)));
-            type.setDocumentTypeCode(new DocumentTypeCodeType(line.getDocType()));
-            type.setId(new IDType(line.getNumber()));
-            type.setAccountingCustomerParty(Utils.getCustomer(line.getCustomer()));
-            final var status = new StatusType();
-            status.setConditionCode(new ConditionCodeType(String.valueOf(line.getStatusCode())));
-            type.setStatus(status);
-            type.setTotalAmount(getAmount(TotalAmountType.class, line.getCrossTotal()));
-
-            final var billingPayments = new ArrayList<BillingPaymentType>();
-            //01: Valor de venta de las operaciones gravadas con el IGV
-            final var billingPayment1 =  new BillingPaymentType();
-            billingPayment1.setPaidAmountType(getAmount(PaidAmountType.class, line.getNetTotal()));
-            billingPayment1.setInstructionID(new InstructionIDType("01"));
-            billingPayments.add(billingPayment1);
-            // 02: Valores de venta de las operaciones exoneradas del IGV
-            final var billingPayment2 =  new BillingPaymentType();
-            billingPayment2.setPaidAmountType(getAmount(PaidAmountType.class, BigDecimal.ZERO));
-            billingPayment2.setInstructionID(new InstructionIDType("02"));
-            billingPayments.add(billingPayment2);
-            // 03: Valores de venta de las operaciones inafectas del IGV
-            final var billingPayment3 =  new BillingPaymentType();
-            billingPayment3.setPaidAmountType(getAmount(PaidAmountType.class, BigDecimal.ZERO));
-            billingPayment3.setInstructionID(new InstructionIDType("03"));
-            billingPayments.add(billingPayment3);
-            // 04: Valor de venta de las exportaciones del item
-            final var billingPayment4 =  new BillingPaymentType();
-            billingPayment4.setPaidAmountType(getAmount(PaidAmountType.class, BigDecimal.ZERO));
-            billingPayment4.setInstructionID(new InstructionIDType("04"));
-            billingPayments.add(billingPayment4);
-            /**
-            // 05: Valor de venta de las operaciones gratuitas  (Condicional)
-            final var billingPayment5 =  new BillingPaymentType();
-            billingPayment5.setPaidAmountType(getAmount(PaidAmountType.class, BigDecimal.ZERO));
-            billingPayment5.setInstructionID(new InstructionIDType("05"));
-            billingPayments.add(billingPayment5);
-             **/
-            type.setBillingPayments(billingPayments);
-            type.setTaxTotals(Taxes.getTaxTotal(line.getTaxEntries(), true));
-            idx++;
-        }
-
-        return ret;
+        return getSummaryLines(lines, false);
+    }
+
+    /**
+     * Converts the lines of a summary. The line ids follow the order of the
+     * given list, also if the lines are converted in parallel.
+     *
+     * @param lines lines to convert
+     * @param parallel convert the lines in parallel in the common fork/join
+     *            pool
+     * @return the converted lines in the order of the given list
+     */
+    public static List<SummaryDocumentsLineType> getSummaryLines(final List<ISummaryLine> lines,
+                                                                 final boolean parallel)
+    {
+        final var list = lines instanceof RandomAccess ? lines : new ArrayList<>(lines);
+        final var indexes = IntStream.range(0, list.size());
+        return (parallel ? indexes.parallel() : indexes)
+                        .mapToObj(idx -> getSummaryLine(list.get(idx), idx + 1))
+                        .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    private static SummaryDocumentsLineType getSummaryLine(final ISummaryLine line,
+                                                           final int idx)
+    {
+        final var type = new SummaryDocumentsLineType();
+        type.setLineId(new LineIDType(String.valueOf(idx)));
+        type.setDocumentTypeCode(new DocumentTypeCodeType(line.getDocType()));
+        type.setId(new IDType(line.getNumber()));
+        type.setAccountingCustomerParty(Utils.getCustomer(line.getCustomer()));
+        final var status = new StatusType();
+        status.setConditionCode(new ConditionCodeType(String.valueOf(line.getStatusCode())));
+        type.setStatus(status);
+        type.setTotalAmount(getAmount(TotalAmountType.class, line.getCrossTotal()));
+
+        final var billingPayments = new ArrayList<BillingPaymentType>();
+        //01: Valor de venta de las operaciones gravadas con el IGV
+        final var billingPayment1 =  new BillingPaymentType();
+        billingPayment1.setPaidAmountType(getAmount(PaidAmountType.class, line.getNetTotal()));
+        billingPayment1.setInstructionID(new InstructionIDType("01"));
+        billingPayments.add(billingPayment1);
+        // 02: Valores de venta de las operaciones exoneradas del IGV
+        final var billingPayment2 =  new BillingPaymentType();
+        billingPayment2.setPaidAmountType(getAmount(PaidAmountType.class, BigDecimal.ZERO));
+        billingPayment2.setInstructionID(new InstructionIDType("02"));
+        billingPayments.add(billingPayment2);
+        // 03: Valores de venta de las operaciones inafectas del IGV
+        final var billingPayment3 =  new BillingPaymentType();
+        billingPayment3.setPaidAmountType(getAmount(PaidAmountType.class, BigDecimal.ZERO));
+        billingPayment3.setInstructionID(new InstructionIDType("03"));
+        billingPayments.add(billingPayment3);
+        // 04: Valor de venta de las exportaciones del item
+        final var billingPayment4 =  new BillingPaymentType();
+        billingPayment4.setPaidAmountType(getAmount(PaidAmountType.class, BigDecimal.ZERO));
+        billingPayment4.setInstructionID(new InstructionIDType("04"));
+        billingPayments.add(billingPayment4);
+        /**
+        // 05: Valor de venta de las operaciones gratuitas  (Condicional)
+        final var billingPayment5 =  new BillingPaymentType();
+        billingPayment5.setPaidAmountType(getAmount(PaidAmountType.class, BigDecimal.ZERO));
+        billingPayment5.setInstructionID(new InstructionIDType("05"));
+        billingPayments.add(billingPayment5);
+         **/
+        type.setBillingPayments(billingPayments);
+        type.setTaxTotals(Taxes.getTaxTotal(line.getTaxEntries(), true));
+        return type;
     }
 
     public static PersonType getPerson(final IPerson person) {
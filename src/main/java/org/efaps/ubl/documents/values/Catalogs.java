@@ -23,21 +23,27 @@ public enum Catalogs
     TAX("Codigo de tributos", "05"),
     DOI("Documento de Identidad", "06"),
     AIGV("Afectacion del IGV", "07"),
+    PRICETYPE("Tipo de Precio", "16"),
     MODTRASL("Modalidad de traslado", "18"),
     MOTTRASL("Motivo de traslado", "20"),
     CADE("Cargo/descuento", "53"),
     ITEMPROP("Propiedad del item", "55");
 
     private final String name;
-    private final String number;
+    private final String uri;
 
     Catalogs(final String name, final String number) {
         this.name = name;
-        this.number = number;
+        this.uri = "urn:pe:gob:sunat:cpe:see:gem:catalogos:catalogo" + number;
     }
 
+    /**
+     * The URI is built once per catalog, every call returns the same instance.
+     *
+     * @return the URI of the catalog
+     */
     public String getURI() {
-         return "urn:pe:gob:sunat:cpe:see:gem:catalogos:catalogo" + number;
+         return uri;
     }
 
     public String getName() {
@@ -15,16 +15,24 @@
  */
 package org.efaps.ubl.dto;
 
+import java.nio.file.Path;
+
 public class SignResponseDto
 {
 
     private final String ubl;
+    private final byte[] bytes;
+    private final Path path;
     private final String hash;
+    private final Exception error;
 
     private SignResponseDto(final Builder builder)
     {
         ubl = builder.ubl;
+        bytes = builder.bytes;
+        path = builder.path;
         hash = builder.hash;
+        error = builder.error;
     }
 
     public String getUbl()
@@ -32,11 +40,42 @@ public class SignResponseDto
         return ubl;
     }
 
+    /**
+     * @return the signed document encoded in its charset if it was requested
+     *         as bytes
+     */
+    public byte[] getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * @return the file the signed document was written to
+     */
+    public Path getPath()
+    {
+        return path;
+    }
+
     public String getHash()
     {
         return hash;
     }
 
+    /**
+     * @return the exception that prevented the document from being signed,
+     *         <code>null</code> if it was signed
+     */
+    public Exception getError()
+    {
+        return error;
+    }
+
+    public boolean isSigned()
+    {
+        return error == null && hash != null;
+    }
+
     /**
      * Creates builder to build {@link SignResponseDto}.
      *
@@ -54,7 +93,10 @@ public class SignResponseDto
     {
 
         private String ubl;
+        private byte[] bytes;
+        private Path path;
         private String hash;
+        private Exception error;
 
         private Builder()
         {
@@ -66,12 +108,30 @@ public class SignResponseDto
             return this;
         }
 
+        public Builder withBytes(final byte[] bytes)
+        {
+            this.bytes = bytes;
+            return this;
+        }
+
+        public Builder withPath(final Path path)
+        {
+            this.path = path;
+            return this;
+        }
+
         public Builder withHash(final String hash)
         {
             this.hash = hash;
             return this;
         }
 
+        public Builder withError(final Exception error)
+        {
+            this.error = error;
+            return this;
+        }
+
         public SignResponseDto build()
         {
             return new SignResponseDto(this);
@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.dto;
+
+public class SummaryDocumentDto
+{
+
+    private final String number;
+    private final int lineCount;
+    private final String ubl;
+    private final SignResponseDto signResponse;
+
+    private SummaryDocumentDto(final Builder builder)
+    {
+        number = builder.number;
+        lineCount = builder.lineCount;
+        ubl = builder.ubl;
+        signResponse = builder.signResponse;
+    }
+
+    /**
+     * @return number of the summary, e.g. <code>RC-20230228-1</code>
+     */
+    public String getNumber()
+    {
+        return number;
+    }
+
+    public int getLineCount()
+    {
+        return lineCount;
+    }
+
+    /**
+     * @return the unsigned summary
+     */
+    public String getUbl()
+    {
+        return ubl;
+    }
+
+    /**
+     * @return the signed summary, <code>null</code> if signing was not
+     *         requested
+     */
+    public SignResponseDto getSignResponse()
+    {
+        return signResponse;
+    }
+
+    /**
+     * Creates builder to build {@link SummaryDocumentDto}.
+     *
+     * @return created builder
+     */
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Builder to build {@link SummaryDocumentDto}.
+     */
+    public static final class Builder
+    {
+
+        private String number;
+        private int lineCount;
+        private String ubl;
+        private SignResponseDto signResponse;
+
+        private Builder()
+        {
+        }
+
+        public Builder withNumber(final String number)
+        {
+            this.number = number;
+            return this;
+        }
+
+        public Builder withLineCount(final int lineCount)
+        {
+            this.lineCount = lineCount;
+            return this;
+        }
+
+        public Builder withUbl(final String ubl)
+        {
+            this.ubl = ubl;
+            return this;
+        }
+
+        public Builder withSignResponse(final SignResponseDto signResponse)
+        {
+            this.signResponse = signResponse;
+            return this;
+        }
+
+        public SummaryDocumentDto build()
+        {
+            return new SummaryDocumentDto(this);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.instrumentation;
+
+import org.efaps.ubl.marshaller.DocumentType;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * Java Flight Recorder event for an operation on one document. The events
+ * are disabled unless a recording enables them, e.g. with
+ * <code>-XX:StartFlightRecording</code> and the default settings.
+ */
+@Category({ "eFaps", "UBL" })
+public abstract class AbstractDocumentEvent
+    extends Event
+{
+
+    // JFR does not record private fields of super classes
+
+    @Label("Number")
+    protected String number;
+
+    @Label("Document Type")
+    protected String documentType;
+
+    @Label("Lines")
+    protected int lines;
+
+    @Label("Size")
+    @DataAmount
+    protected long bytes;
+
+    /**
+     * Sets the fields and commits the event if it is enabled and exceeds
+     * the threshold of the recording.
+     *
+     * @param number number of the document
+     * @param documentType type of the document
+     * @param lines number of lines
+     * @param bytes size of the xml in its encoding
+     */
+    public void commit(final String number,
+                       final DocumentType documentType,
+                       final int lines,
+                       final long bytes)
+    {
+        this.number = number;
+        this.documentType = documentType == null ? null : documentType.name();
+        this.lines = lines;
+        this.bytes = bytes;
+        commit();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.instrumentation;
+
+import org.efaps.ubl.marshaller.DocumentType;
+
+/**
+ * Receives the timings of the generation and signing of documents, e.g. to
+ * feed them into a metrics registry. An implementation is either registered
+ * with {@link Instrumentations#set(Instrumentation)} or found with the
+ * {@link java.util.ServiceLoader} as <code>META-INF/services/org.efaps.ubl.instrumentation.Instrumentation</code>.
+ * The methods are called by the threads doing the work and must be
+ * thread-safe and fast.
+ */
+public interface Instrumentation
+{
+
+    /** Does nothing, used if no implementation is registered. */
+    Instrumentation NOOP = new Instrumentation()
+    {
+
+        @Override
+        public boolean isEnabled()
+        {
+            return false;
+        }
+    };
+
+    /**
+     * @return <code>false</code> to skip measuring completely
+     */
+    default boolean isEnabled()
+    {
+        return true;
+    }
+
+    /**
+     * Called when a phase of a document ended.
+     *
+     * @param phase the phase
+     * @param documentType type of the document, <code>null</code> if unknown
+     * @param nanos duration of the phase
+     */
+    default void onPhase(final Phase phase,
+                         final DocumentType documentType,
+                         final long nanos)
+    {
+    }
+
+    /**
+     * Called once per document when an operation ended.
+     *
+     * @param operation the operation
+     * @param documentType type of the document, <code>null</code> if unknown
+     * @param lines number of lines of the document
+     * @param bytes size of the resulting xml in its encoding
+     * @param nanos duration of the whole operation
+     */
+    default void onDocument(final Operation operation,
+                            final DocumentType documentType,
+                            final int lines,
+                            final long bytes,
+                            final long nanos)
+    {
+    }
+}
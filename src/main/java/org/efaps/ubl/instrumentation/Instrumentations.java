@@ -0,0 +1,255 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.instrumentation;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ServiceLoader;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.efaps.ubl.marshaller.DocumentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the active {@link Instrumentation} and measures on its behalf. If it
+ * is disabled, which is the default, no time is taken and nothing is
+ * counted.
+ *
+ * <pre>
+ * final var start = Instrumentations.start();
+ * parse();
+ * Instrumentations.phase(Phase.PARSE, DocumentType.INVOICE, start);
+ * </pre>
+ */
+public final class Instrumentations
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger(Instrumentations.class);
+
+    private static volatile Instrumentation instrumentation = load();
+
+    private Instrumentations()
+    {
+    }
+
+    public static Instrumentation get()
+    {
+        return instrumentation;
+    }
+
+    /**
+     * Replaces the active instrumentation.
+     *
+     * @param instrumentation instrumentation to use, <code>null</code> for
+     *            none
+     */
+    public static void set(final Instrumentation instrumentation)
+    {
+        Instrumentations.instrumentation = instrumentation == null ? Instrumentation.NOOP : instrumentation;
+    }
+
+    public static boolean isEnabled()
+    {
+        return instrumentation.isEnabled();
+    }
+
+    /**
+     * @return the start of a phase or operation, 0 if disabled
+     */
+    public static long start()
+    {
+        return instrumentation.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Reports the end of a phase.
+     *
+     * @param phase the phase
+     * @param documentType type of the document
+     * @param start value of {@link #start()} at the beginning of the phase
+     * @return the end of the phase, to be used as start of the next one
+     */
+    public static long phase(final Phase phase,
+                             final DocumentType documentType,
+                             final long start)
+    {
+        final var current = instrumentation;
+        long ret = 0;
+        if (current.isEnabled()) {
+            ret = System.nanoTime();
+            current.onPhase(phase, documentType, ret - start);
+        }
+        return ret;
+    }
+
+    /**
+     * Reports a finished document.
+     *
+     * @param operation the operation
+     * @param documentType type of the document
+     * @param lines number of lines
+     * @param bytes size of the xml
+     * @param start value of {@link #start()} at the beginning of the operation
+     */
+    public static void document(final Operation operation,
+                                final DocumentType documentType,
+                                final int lines,
+                                final long bytes,
+                                final long start)
+    {
+        final var current = instrumentation;
+        if (current.isEnabled()) {
+            current.onDocument(operation, documentType, lines, bytes, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Generates the xml of a document by building the JAXB object graph and
+     * marshalling it, reporting both phases and the document and emitting a
+     * {@link MarshalEvent} or, for summaries, a {@link SummaryBuildEvent}.
+     *
+     * @param <T> type of the JAXB object graph
+     * @param documentType type of the document
+     * @param number number of the document
+     * @param lines number of lines
+     * @param charset encoding of the xml
+     * @param build builds the object graph
+     * @param marshal marshals the object graph
+     * @return the xml
+     */
+    public static <T> String generate(final DocumentType documentType,
+                                      final String number,
+                                      final int lines,
+                                      final Charset charset,
+                                      final Supplier<T> build,
+                                      final Function<T, String> marshal)
+    {
+        final var event = newEvent(documentType);
+        event.begin();
+        final var start = start();
+        final var jaxb = build.get();
+        final var built = phase(Phase.BUILD, documentType, start);
+        final var ret = marshal.apply(jaxb);
+        phase(Phase.MARSHAL, documentType, built);
+        report(event, documentType, number, lines, charset, ret, start);
+        return ret;
+    }
+
+    /**
+     * Generates the xml of a document without object graph, reporting the
+     * marshal phase and the document and emitting a {@link MarshalEvent}.
+     *
+     * @param documentType type of the document
+     * @param number number of the document
+     * @param lines number of lines
+     * @param charset encoding of the xml
+     * @param write writes the xml
+     * @return the xml
+     */
+    public static String generate(final DocumentType documentType,
+                                  final String number,
+                                  final int lines,
+                                  final Charset charset,
+                                  final Supplier<String> write)
+    {
+        final var event = newEvent(documentType);
+        event.begin();
+        final var start = start();
+        final var ret = write.get();
+        phase(Phase.MARSHAL, documentType, start);
+        report(event, documentType, number, lines, charset, ret, start);
+        return ret;
+    }
+
+    /**
+     * Calculates the size of the text in the given encoding without encoding
+     * it for UTF-8 and the single byte encodings.
+     *
+     * @param text text to measure
+     * @param charset encoding
+     * @return number of bytes, 0 for <code>null</code>
+     */
+    public static long byteSize(final CharSequence text,
+                                final Charset charset)
+    {
+        long ret = 0;
+        if (text != null) {
+            if (StandardCharsets.UTF_8.equals(charset)) {
+                final var length = text.length();
+                for (var i = 0; i < length; i++) {
+                    final var c = text.charAt(i);
+                    if (c < 0x80) {
+                        ret++;
+                    } else if (c < 0x800) {
+                        ret += 2;
+                    } else if (Character.isHighSurrogate(c) && i + 1 < length
+                                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                        ret += 4;
+                        i++;
+                    } else {
+                        ret += 3;
+                    }
+                }
+            } else if (StandardCharsets.ISO_8859_1.equals(charset) || StandardCharsets.US_ASCII.equals(charset)) {
+                ret = text.length();
+            } else {
+                ret = text.toString().getBytes(charset).length;
+            }
+        }
+        return ret;
+    }
+
+    private static AbstractDocumentEvent newEvent(final DocumentType documentType)
+    {
+        return DocumentType.SUMMARY_DOCUMENTS.equals(documentType) ? new SummaryBuildEvent() : new MarshalEvent();
+    }
+
+    private static void report(final AbstractDocumentEvent event,
+                               final DocumentType documentType,
+                               final String number,
+                               final int lines,
+                               final Charset charset,
+                               final String xml,
+                               final long start)
+    {
+        event.end();
+        final var enabled = isEnabled();
+        if (enabled || event.shouldCommit()) {
+            final var bytes = byteSize(xml, charset);
+            if (enabled) {
+                document(Operation.GENERATE, documentType, lines, bytes, start);
+            }
+            event.commit(number, documentType, lines, bytes);
+        }
+    }
+
+    private static Instrumentation load()
+    {
+        Instrumentation ret = Instrumentation.NOOP;
+        try {
+            final var found = ServiceLoader.load(Instrumentation.class).findFirst();
+            if (found.isPresent()) {
+                ret = found.get();
+                LOG.info("Using instrumentation {}", ret.getClass().getName());
+            }
+        } catch (final java.util.ServiceConfigurationError e) {
+            LOG.error("Catched", e);
+        }
+        return ret;
+    }
+}
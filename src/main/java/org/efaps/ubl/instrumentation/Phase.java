@@ -0,0 +1,37 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.instrumentation;
+
+/**
+ * The timed phases of generating and signing a document.
+ */
+public enum Phase
+{
+    /** Building the JAXB object graph of a document. */
+    BUILD,
+    /** Writing the xml, by JAXB or by the streaming writer. */
+    MARSHAL,
+    /** Parsing the xml to be signed. */
+    PARSE,
+    /** Removing the indentation and adding the extension for the signature. */
+    NORMALIZE,
+    /** Calculating the digest and the RSA signature. */
+    SIGN,
+    /** Writing the signed document. */
+    SERIALIZE,
+    /** Reading a document to add it to a summary. */
+    SUMMARY_PARSE;
+}
@@ -15,17 +15,24 @@
  */
 package org.efaps.ubl.marshaller;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import javax.xml.namespace.QName;
+import javax.xml.validation.Schema;
 
 import org.efaps.ubl.extension.AdditionalInformation;
 import org.efaps.ubl.extension.Definitions;
 import org.efaps.ubl.extension.SummaryDocumentsType;
 
-import com.helger.collection.commons.CommonsArrayList;
 import com.helger.collection.commons.ICommonsList;
 import com.helger.io.resource.ClassPathResource;
+import com.helger.ubl21.CUBL21;
 import com.helger.ubl21.UBL21Marshaller;
 import com.helger.ubl21.UBL21Marshaller.UBL21JAXBMarshaller;
+import com.helger.ubl21.UBL21NamespaceContext;
+import com.helger.xml.namespace.MapBasedNamespaceContext;
 import com.helger.xsds.xmldsig.SignatureType;
 
 import jakarta.xml.bind.JAXBContext;
@@ -39,26 +46,99 @@ public class DocumentMarshaller<JAXBTYPE>
     extends UBL21JAXBMarshaller<JAXBTYPE>
 {
 
+    private static final Map<List<Class<?>>, JAXBContext> CONTEXTS = new ConcurrentHashMap<>();
+
+    /**
+     * Prefixes used by SUNAT: <code>sac</code> for the SUNAT aggregates and
+     * <code>ext</code> instead of <code>cec</code> for the extensions. Never
+     * modified after creation, every marshaller works on its own copy.
+     */
+    private static final MapBasedNamespaceContext NAMESPACES = UBL21NamespaceContext.getInstance().getClone()
+                    .removeMapping("")
+                    .removeMapping("cec")
+                    .setMapping("sac", Definitions.NAMESPACE_SUNATAGGREGATE)
+                    .setMapping("ext", CUBL21.XML_SCHEMA_CEC_NAMESPACE_URL);
+
+    private final DocumentType documentType;
+
     private DocumentMarshaller(Class<JAXBTYPE> aType,
                                ICommonsList<ClassPathResource> aXSDs,
                                QName aRootElementQName)
     {
         super(aType, aXSDs, aRootElementQName);
+        documentType = DocumentType.of(aRootElementQName);
+        final var namespaces = NAMESPACES.getClone();
+        if (!namespaces.isNamespaceURIMapped(aRootElementQName.getNamespaceURI())) {
+            namespaces.addDefaultNamespaceURI(aRootElementQName.getNamespaceURI());
+        }
+        setNamespaceContext(namespaces);
+    }
+
+    @Override
+    protected Schema createValidationSchema()
+    {
+        return isUseSchema() ? getSchema() : null;
     }
 
     @Override
     protected JAXBContext getJAXBContext(ClassLoader classloader)
         throws JAXBException
     {
-        final var clazzes = new CommonsArrayList<Class<?>>();
-        clazzes.add(InvoiceType.class);
-        clazzes.add(CreditNoteType.class);
-        clazzes.add(DespatchAdviceType.class);
-        clazzes.add(AdditionalInformation.class);
-        clazzes.add(SignatureType.class);
-        clazzes.add(ApplicationResponseType.class);
-        final var context = JAXBContext.newInstance(clazzes.toArray(new Class[clazzes.size()]));
-        return context;
+        return getContext(InvoiceType.class, CreditNoteType.class, DespatchAdviceType.class,
+                        AdditionalInformation.class, SignatureType.class, ApplicationResponseType.class);
+    }
+
+    /**
+     * Gets the JAXB context of this marshaller, creating it if it does not
+     * exist yet.
+     *
+     * @return the context
+     * @throws JAXBException the context could not be created
+     */
+    public JAXBContext getSharedContext()
+        throws JAXBException
+    {
+        return getJAXBContext(getClassLoader());
+    }
+
+    /**
+     * Gets the compiled schema of this marshaller from the
+     * {@link SchemaCache}.
+     *
+     * @return the schema or <code>null</code> if the document type has no XSD
+     */
+    public Schema getSchema()
+    {
+        return SchemaCache.get(documentType);
+    }
+
+    public DocumentType getDocumentType()
+    {
+        return documentType;
+    }
+
+    /**
+     * Gets the context for the given classes. Creating a context is the most
+     * expensive part of marshalling, therefore it is done only once per set
+     * of classes. Contexts are thread-safe and shared by all marshallers.
+     *
+     * @param clazzes classes bound by the context
+     * @return the context
+     * @throws JAXBException the context could not be created
+     */
+    protected static JAXBContext getContext(final Class<?>... clazzes)
+        throws JAXBException
+    {
+        final var key = List.of(clazzes);
+        var ret = CONTEXTS.get(key);
+        if (ret == null) {
+            ret = JAXBContext.newInstance(clazzes);
+            final var existing = CONTEXTS.putIfAbsent(key, ret);
+            if (existing != null) {
+                ret = existing;
+            }
+        }
+        return ret;
     }
 
     public static DocumentMarshaller<DespatchAdviceType> deliveryNote()
@@ -91,8 +171,6 @@ public class DocumentMarshaller<JAXBTYPE>
 
     public static DocumentMarshaller<SummaryDocumentsType> summary()
     {
-        final ICommonsList<ClassPathResource> resources = new CommonsArrayList<>();
-        resources.addAll(UBL21Marshaller.getAllCreditNoteXSDs());
         return new DocumentMarshaller<>(SummaryDocumentsType.class,
                         null,
                         new QName(Definitions.NAMESPACE_SUMMARY, "SummaryDocuments"))
@@ -102,10 +180,7 @@ public class DocumentMarshaller<JAXBTYPE>
             protected JAXBContext getJAXBContext(ClassLoader classloader)
                 throws JAXBException
             {
-                final var clazzes = new CommonsArrayList<Class<?>>();
-                clazzes.add(SummaryDocumentsType.class);
-                final var context = JAXBContext.newInstance(clazzes.toArray(new Class[clazzes.size()]));
-                return context;
+                return getContext(SummaryDocumentsType.class);
             }
         };
     }
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.marshaller;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.xml.namespace.QName;
+
+import org.efaps.ubl.extension.Definitions;
+
+import com.helger.io.resource.ClassPathResource;
+import com.helger.ubl21.UBL21Marshaller;
+
+/**
+ * The document types handled by the {@link DocumentMarshaller}.
+ */
+public enum DocumentType
+{
+    INVOICE(oasis.names.specification.ubl.schema.xsd.invoice_21.ObjectFactory._Invoice_QNAME,
+                    UBL21Marshaller::getAllInvoiceXSDs),
+    CREDIT_NOTE(oasis.names.specification.ubl.schema.xsd.creditnote_21.ObjectFactory._CreditNote_QNAME,
+                    UBL21Marshaller::getAllCreditNoteXSDs),
+    DESPATCH_ADVICE(oasis.names.specification.ubl.schema.xsd.despatchadvice_21.ObjectFactory._DespatchAdvice_QNAME,
+                    UBL21Marshaller::getAllDespatchAdviceXSDs),
+    APPLICATION_RESPONSE(
+                    oasis.names.specification.ubl.schema.xsd.applicationresponse_21.ObjectFactory._ApplicationResponse_QNAME,
+                    UBL21Marshaller::getAllApplicationResponseXSDs),
+    /** The SUNAT XSD for summaries is not part of the library. */
+    SUMMARY_DOCUMENTS(new QName(Definitions.NAMESPACE_SUMMARY, "SummaryDocuments"), List::of);
+
+    private final QName rootElement;
+    private final Supplier<List<ClassPathResource>> xsds;
+
+    DocumentType(final QName rootElement,
+                 final Supplier<List<ClassPathResource>> xsds)
+    {
+        this.rootElement = rootElement;
+        this.xsds = xsds;
+    }
+
+    public QName getRootElement()
+    {
+        return rootElement;
+    }
+
+    /**
+     * @return the XSD set of the document type, empty if there is none
+     */
+    public List<ClassPathResource> getXSDs()
+    {
+        return xsds.get();
+    }
+
+    /**
+     * @param rootElement name of the root element of a document
+     * @return the document type or <code>null</code> if the root element is
+     *         unknown
+     */
+    public static DocumentType of(final QName rootElement)
+    {
+        for (final var type : values()) {
+            if (type.rootElement.equals(rootElement)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.marshaller;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Validator;
+
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Validates serialized documents against the schema of their type. The
+ * schemas come from the {@link SchemaCache} and every thread keeps its own
+ * validator per document type, so repeated validations only pay for the
+ * validation itself.
+ * <p>
+ * As for the JAXB unmarshaller a DOCTYPE is not allowed. It is reported as
+ * validation error and external DTDs, schemas and entities are never read.
+ * </p>
+ */
+public final class DocumentValidator
+{
+
+    private static final XMLInputFactory INPUT_FACTORY = createFactory();
+
+    /** Returned by {@link #getRoot(byte[])} for a document with a DOCTYPE. */
+    private static final QName DOCTYPE = new QName("DOCTYPE");
+
+    private static final ThreadLocal<Map<DocumentType, Validator>> VALIDATORS = ThreadLocal
+                    .withInitial(() -> new EnumMap<>(DocumentType.class));
+
+    private DocumentValidator()
+    {
+    }
+
+    /**
+     * Validates the document against the schema of the type given by its
+     * root element.
+     *
+     * @param xml the document
+     * @return the validation errors, empty if the document is valid
+     * @throws IllegalArgumentException the document type is unknown or has no
+     *             schema
+     */
+    public static List<SAXParseException> validate(final byte[] xml)
+    {
+        final QName root;
+        try {
+            root = getRoot(xml);
+        } catch (final XMLStreamException e) {
+            throw new IllegalArgumentException("Could not read the root element", e);
+        }
+        if (root == DOCTYPE) {
+            return getDoctypeErrors();
+        }
+        final var documentType = root == null ? null : DocumentType.of(root);
+        if (documentType == null) {
+            throw new IllegalArgumentException("Unknown document type");
+        }
+        return validate(getValidator(documentType), xml);
+    }
+
+    /**
+     * Validates the document against the schema of the given type.
+     *
+     * @param documentType type of the document
+     * @param xml the document
+     * @return the validation errors, empty if the document is valid
+     * @throws IllegalArgumentException the document type has no schema
+     */
+    public static List<SAXParseException> validate(final DocumentType documentType,
+                                                   final byte[] xml)
+    {
+        final var validator = getValidator(documentType);
+        try {
+            if (getRoot(xml) == DOCTYPE) {
+                return getDoctypeErrors();
+            }
+        } catch (final XMLStreamException e) {
+            // not well-formed, reported by the validator
+        }
+        return validate(validator, xml);
+    }
+
+    private static List<SAXParseException> validate(final Validator validator,
+                                                    final byte[] xml)
+    {
+        final var errors = new ArrayList<SAXParseException>();
+        validator.setErrorHandler(new ErrorHandler()
+        {
+
+            @Override
+            public void warning(final SAXParseException exception)
+            {
+                // warnings do not make a document invalid
+            }
+
+            @Override
+            public void error(final SAXParseException exception)
+            {
+                errors.add(exception);
+            }
+
+            @Override
+            public void fatalError(final SAXParseException exception)
+                throws SAXException
+            {
+                errors.add(exception);
+                throw exception;
+            }
+        });
+        try {
+            validator.validate(new StreamSource(new ByteArrayInputStream(xml)));
+        } catch (final SAXParseException e) {
+            if (!errors.contains(e)) {
+                errors.add(e);
+            }
+        } catch (final SAXException | IOException e) {
+            errors.add(new SAXParseException(e.getMessage(), null, e));
+        } finally {
+            validator.setErrorHandler(null);
+        }
+        return errors;
+    }
+
+    private static Validator getValidator(final DocumentType documentType)
+    {
+        final var validators = VALIDATORS.get();
+        var ret = validators.get(documentType);
+        if (ret == null) {
+            final var schema = SchemaCache.get(documentType);
+            if (schema == null) {
+                throw new IllegalArgumentException("No schema available for " + documentType);
+            }
+            ret = schema.newValidator();
+            try {
+                ret.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+                ret.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+            } catch (final SAXException e) {
+                throw new IllegalStateException("Could not restrict the access of the validator", e);
+            }
+            validators.put(documentType, ret);
+        }
+        // the validator resets its state for every validation, a reset() would
+        // also drop the restricted access
+        return ret;
+    }
+
+    /**
+     * Reads the prolog of the document up to the root element.
+     *
+     * @param xml the document
+     * @return the name of the root element, {@link #DOCTYPE} if the document
+     *         has a DOCTYPE or <code>null</code> if it has no element
+     * @throws XMLStreamException the document could not be read
+     */
+    private static QName getRoot(final byte[] xml)
+        throws XMLStreamException
+    {
+        QName ret = null;
+        final var reader = INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(xml));
+        try {
+            while (ret == null && reader.hasNext()) {
+                final var event = reader.next();
+                if (event == XMLStreamConstants.DTD) {
+                    ret = DOCTYPE;
+                } else if (event == XMLStreamConstants.START_ELEMENT) {
+                    ret = reader.getName();
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return ret;
+    }
+
+    private static List<SAXParseException> getDoctypeErrors()
+    {
+        final var ret = new ArrayList<SAXParseException>();
+        ret.add(new SAXParseException("DOCTYPE is not allowed", null));
+        return ret;
+    }
+
+    private static XMLInputFactory createFactory()
+    {
+        final var ret = XMLInputFactory.newDefaultFactory();
+        ret.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        ret.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return ret;
+    }
+}
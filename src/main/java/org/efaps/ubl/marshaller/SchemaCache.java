@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.marshaller;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.validation.Schema;
+
+import com.helger.xml.schema.XMLSchemaCache;
+
+/**
+ * Compiled schemas per document type. A schema is compiled on first use and
+ * then shared; compiled schemas are immutable and thread-safe. The
+ * marshallers use the same instances for validation on write.
+ */
+public final class SchemaCache
+{
+
+    private static final Map<DocumentType, Optional<Schema>> SCHEMAS = new ConcurrentHashMap<>();
+
+    private SchemaCache()
+    {
+    }
+
+    /**
+     * @param documentType document type
+     * @return the compiled schema or <code>null</code> if the document type
+     *         has no XSD
+     */
+    public static Schema get(final DocumentType documentType)
+    {
+        return SCHEMAS.computeIfAbsent(documentType, SchemaCache::compile).orElse(null);
+    }
+
+    private static Optional<Schema> compile(final DocumentType documentType)
+    {
+        final var xsds = documentType.getXSDs();
+        return xsds.isEmpty() ? Optional.empty()
+                        : Optional.of(XMLSchemaCache.getInstanceOfClassLoader(SchemaCache.class.getClassLoader())
+                                        .getSchema(xsds));
+    }
+}
@@ -15,15 +15,32 @@
  */
 package org.efaps.ubl;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 
 import org.apache.commons.io.FileUtils;
 import org.efaps.ubl.documents.DocTest;
+import org.efaps.ubl.documents.Receipt;
+import org.efaps.ubl.documents.elements.Summary;
+import org.efaps.ubl.documents.elements.Taxes;
+import org.efaps.ubl.documents.interfaces.ILine;
 import org.testng.annotations.Test;
 
 public class SummaryServiceTest
@@ -48,4 +65,149 @@ public class SummaryServiceTest
         final var ubl = summary.getUBLXml();
         System.out.println(ubl);
     }
+
+    @Test
+    public void createSummaryFromFiles()
+        throws IOException
+    {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final File file1 = new File(classLoader.getResource("Invoice1.xml").getFile());
+        final File file2 = new File(classLoader.getResource("Invoice2.xml").getFile());
+        final var summaryService = new SummaryService();
+        final var expected = summaryService.createSummary(
+                        FileUtils.readFileToString(file1, StandardCharsets.UTF_8),
+                        FileUtils.readFileToString(file2, StandardCharsets.UTF_8));
+        final var fromPaths = summaryService.createSummary(Stream.of(file1.toPath(), file2.toPath()));
+        final var fromStreams = summaryService.createSummary(
+                        List.<InputStream>of(new FileInputStream(file1), new FileInputStream(file2)).iterator());
+        final var xml = getUBLXml(expected);
+        assertEquals(getUBLXml(fromPaths), xml);
+        assertEquals(getUBLXml(fromStreams), xml);
+        assertEquals(fromPaths.getLines().get(1).getNumber(), expected.getLines().get(1).getNumber());
+    }
+
+    @Test
+    public void partialReadSameAsUnmarshal()
+        throws IOException
+    {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final var xmls = new ArrayList<String>();
+        for (final var resource : new String[] { "Invoice1.xml", "Invoice2.xml", "Invoice3.xml", "Invoice4.xml",
+                        "Invoice5.xml", "InvoiceWithSignature1.xml" }) {
+            xmls.add(FileUtils.readFileToString(new File(classLoader.getResource(resource).getFile()),
+                            StandardCharsets.UTF_8));
+        }
+        final var lines = new ArrayList<ILine>();
+        for (int i = 0; i < 50; i++) {
+            lines.addAll(DocTest.getLines());
+        }
+        xmls.add(new Receipt()
+                        .withSupplier(DocTest.getSupplier())
+                        .withCustomer(DocTest.getCustomer())
+                        .withCurrency("PEN")
+                        .withNumber("B001-000156")
+                        .withDate(LocalDate.of(2020, 8, 16))
+                        .withNetTotal(new BigDecimal("100"))
+                        .withCrossTotal(new BigDecimal("118"))
+                        .withTax(new Taxes.IGV()
+                                        .setAmount(new BigDecimal("18"))
+                                        .setTaxableAmount(new BigDecimal("100")))
+                        .withLines(lines)
+                        .getUBLXml());
+        final var array = xmls.toArray(new String[0]);
+        final var expected = getUBLXml(new SummaryService().withFullUnmarshal(true).createSummary(array));
+        assertEquals(getUBLXml(new SummaryService().createSummary(array)), expected);
+    }
+
+    @Test
+    public void createSummaryParallel()
+        throws IOException
+    {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final var xmls = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            xmls.add(FileUtils.readFileToString(
+                            new File(classLoader.getResource(i % 3 == 0 ? "Invoice1.xml" : "Invoice2.xml").getFile()),
+                            StandardCharsets.UTF_8).replaceFirst("<cbc:ID>", "<cbc:ID>" + i + "-"));
+        }
+        final var array = xmls.toArray(new String[0]);
+        final var expected = getUBLXml(new SummaryService().createSummary(array));
+        final var parallel = new SummaryService()
+                        .withParallelism(4)
+                        .withMaxInFlight(3)
+                        .createSummary(array);
+        assertTrue(parallel.isParallel());
+        assertEquals(parallel.getLines().get(150).getNumber(), "150-F001-000156");
+        assertEquals(getUBLXml(parallel), expected);
+        final var executor = new ForkJoinPool(3);
+        try {
+            assertEquals(getUBLXml(new SummaryService().withExecutor(executor).createSummary(array)), expected);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void batchSummaries()
+        throws IOException
+    {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final var xml = FileUtils.readFileToString(new File(classLoader.getResource("Invoice1.xml").getFile()),
+                        StandardCharsets.UTF_8);
+        final var line = new SummaryService().createSummary(xml).getLines().get(0);
+        final var engine = new Signing()
+                        .withKeyStorePath("keystore.jks")
+                        .withKeyStorePwd("changeit")
+                        .withKeyAlias("testkey")
+                        .withKeyPwd("changeit")
+                        .getEngine();
+        final var documents = SummaryBatcher.of(DocTest.getSupplier(), LocalDate.of(2023, 02, 27))
+                        .withIssueDate(LocalDate.of(2023, 02, 28))
+                        .withMaxLines(2)
+                        .withSigningEngine(engine)
+                        .createAll(Stream.generate(() -> line).limit(5));
+        assertEquals(documents.size(), 3);
+        assertEquals(documents.get(0).getNumber(), "RC-20230228-1");
+        assertEquals(documents.get(2).getNumber(), "RC-20230228-3");
+        assertEquals(documents.get(0).getLineCount(), 2);
+        assertEquals(documents.get(2).getLineCount(), 1);
+        for (final var document : documents) {
+            assertTrue(document.getUbl().contains("<cbc:ID>" + document.getNumber() + "</cbc:ID>"));
+            assertTrue(document.getSignResponse().isSigned());
+        }
+        assertTrue(documents.get(1).getUbl().contains("<cbc:LineID>2</cbc:LineID>"));
+        assertFalse(documents.get(2).getUbl().contains("<cbc:LineID>2</cbc:LineID>"));
+
+        final var count = SummaryBatcher.of(DocTest.getSupplier(), LocalDate.of(2023, 02, 27))
+                        .withIssueDate(LocalDate.of(2023, 02, 28))
+                        .withFirstCorrelative(4)
+                        .createAll(Stream.generate(() -> line).limit(501), document -> {
+                            assertTrue(document.getNumber().startsWith("RC-20230228-"));
+                            assertNull(document.getSignResponse());
+                        });
+        assertEquals(count, 2);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void createSummaryParallelFromInvalid()
+    {
+        new SummaryService().withParallelism(2).createSummary("<Invoice", "<Invoice");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void createSummaryFromInvalid()
+    {
+        new SummaryService().createSummary(
+                        List.<InputStream>of(new ByteArrayInputStream("<Invoice".getBytes(StandardCharsets.UTF_8)))
+                                        .iterator());
+    }
+
+    private String getUBLXml(final Summary summary)
+    {
+        return summary.setNumber("RC-20230228-1001")
+                        .setReferenceDate(LocalDate.of(2023, 02, 28))
+                        .setIssueDate(LocalDate.of(2023, 02, 28))
+                        .setSupplier(DocTest.getSupplier())
+                        .getUBLXml();
+    }
 }
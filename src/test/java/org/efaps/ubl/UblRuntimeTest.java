@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class UblRuntimeTest
+{
+
+    @Test
+    public void warmUp()
+        throws Exception
+    {
+        final var signing = new Signing()
+                        .withKeyStorePath("keystore.jks")
+                        .withKeyStorePwd("changeit")
+                        .withKeyAlias("testkey")
+                        .withKeyPwd("changeit");
+        final var report = UblRuntime.warmUpAsync(signing).get();
+        assertTrue(report.isSuccess(), report.getErrors().toString());
+        assertEquals(List.copyOf(report.getPhases().keySet()), List.of("jaxb", "schemas", "keystore", "sign"));
+
+        final var roundTrip = UblRuntime.warmUp(signing.withJaxbRoundTrip(true));
+        assertTrue(roundTrip.isSuccess(), roundTrip.getErrors().toString());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.io.File;
+import java.io.StringWriter;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+public class WhitespaceNormalizerTest
+{
+
+    @Test
+    public void strip()
+    {
+        assertEquals(WhitespaceNormalizer.strip("\n    "), "\n");
+        assertEquals(WhitespaceNormalizer.strip("\t\r\n  \n"), "\r\n\n");
+        final var text = " PEN ";
+        assertSame(WhitespaceNormalizer.strip(text), text);
+        final var lineBreak = "\n";
+        assertSame(WhitespaceNormalizer.strip(lineBreak), lineBreak);
+    }
+
+    @Test
+    public void sameAsXPath()
+        throws Exception
+    {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        for (final var resource : new String[] { "Invoice1.xml", "DeliveryNote1.xml", "Summary1.xml" }) {
+            final var file = new File(classLoader.getResource(resource).getFile());
+            final var expected = parse(file);
+            final NodeList nodeList = (NodeList) XPathFactory.newInstance().newXPath()
+                            .evaluate("//text()[normalize-space()='']", expected, XPathConstants.NODESET);
+            for (int i = 0; i < nodeList.getLength(); i++) {
+                final Node nodeO = nodeList.item(i);
+                final Node nodeN = nodeO.cloneNode(true);
+                nodeN.setNodeValue(nodeO.getNodeValue().replaceAll("(\\t|\\ )", ""));
+                nodeO.getParentNode().replaceChild(nodeN, nodeO);
+            }
+            final var actual = parse(file);
+            WhitespaceNormalizer.normalize(actual);
+            assertEquals(serialize(actual), serialize(expected), resource);
+        }
+    }
+
+    private Document parse(final File file)
+        throws Exception
+    {
+        final var dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        return dbf.newDocumentBuilder().parse(file);
+    }
+
+    private String serialize(final Document doc)
+        throws Exception
+    {
+        final var out = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(new DOMSource(doc), new StreamResult(out));
+        return out.toString();
+    }
+}
@@ -16,6 +16,11 @@
 package org.efaps.ubl.documents;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
@@ -39,16 +44,19 @@ import org.efaps.ubl.documents.elements.Delivery;
 import org.efaps.ubl.documents.elements.Driver;
 import org.efaps.ubl.documents.elements.Equipment;
 import org.efaps.ubl.documents.elements.Line;
+import org.efaps.ubl.documents.elements.LinesBuilder;
 import org.efaps.ubl.documents.elements.Reference;
 import org.efaps.ubl.documents.elements.Shipment;
 import org.efaps.ubl.documents.elements.Stage;
 import org.efaps.ubl.documents.elements.Supplier;
+import org.efaps.ubl.documents.elements.TaxDefinition;
 import org.efaps.ubl.documents.elements.Taxes;
 import org.efaps.ubl.documents.elements.Transport;
 import org.efaps.ubl.documents.interfaces.IAddress;
 import org.efaps.ubl.documents.interfaces.IInstallment;
 import org.efaps.ubl.documents.interfaces.ILine;
 import org.efaps.ubl.documents.interfaces.IPaymentTerms;
+import org.efaps.ubl.documents.interfaces.ITaxEntry;
 import org.testng.annotations.Test;
 
 public class DocTest
@@ -161,6 +169,36 @@ public class DocTest
                         .signDocument(ubl);
     }
 
+    @Test
+    public void signInvoiceFromDocument()
+    {
+        final var invoice = new Invoice()
+                        .withSupplier(getSupplier())
+                        .withCustomer(getCustomer())
+                        .withCurrency("PEN")
+                        .withNumber("F001-000156")
+                        .withDate(LocalDate.of(2020, 8, 16))
+                        .withNetTotal(new BigDecimal("100"))
+                        .withCrossTotal(new BigDecimal("118"))
+                        .withTax(new Taxes.IGV()
+                                        .setAmount(new BigDecimal("18"))
+                                        .setTaxableAmount(new BigDecimal("100")))
+                        .withLines(getLines());
+        final var signing = new Signing()
+                        .withKeyStorePath("keystore.jks")
+                        .withKeyStorePwd("changeit")
+                        .withKeyAlias("testkey")
+                        .withKeyPwd("changeit");
+        for (final var formatted : new boolean[] { true, false }) {
+            invoice.withFormattedOutput(formatted);
+            final var fromString = signing.signDocument(invoice.getUBLXml());
+            final var fromDocument = signing.signDocument(invoice);
+            assertEquals(fromDocument.getUbl(), fromString.getUbl());
+            assertEquals(fromDocument.getHash(), fromString.getHash());
+            assertEquals(fromDocument.getUbl().contains("\n<cbc:"), formatted);
+        }
+    }
+
     @Test
     public void createInvoiceISOEncoding()
         throws DatatypeConfigurationException, IOException
@@ -555,4 +593,439 @@ public class DocTest
         assertEquals(ubl, xml.trim());
     }
 
+    @Test
+    public void streamingWriterSameAsJaxb()
+    {
+        final var lines = getMoreLines();
+        lines.add(Line.builder().withSku("333.4567")
+                        .withDescription("Bolsa Plástica & <otros>")
+                        .withQuantity(new BigDecimal("3"))
+                        .withUoMCode("NIU")
+                        .withCrossUnitPrice(new BigDecimal("0.30"))
+                        .withCrossPrice(new BigDecimal("0.90"))
+                        .withNetUnitPrice(new BigDecimal("0.10"))
+                        .withNetPrice(new BigDecimal("0.30"))
+                        .withTax(new Taxes.ICB()
+                                        .setAmount(new BigDecimal("0.60"))
+                                        .setTaxableAmount(new BigDecimal("3")))
+                        .withAllowanceCharge(new ChargeEntry()
+                                        .setReason("50")
+                                        .setBaseAmount(new BigDecimal("0.30"))
+                                        .setAmount(new BigDecimal("0.024"))
+                                        .setFactor(new BigDecimal("0.08")))
+                        .withAdditionalItemProperties(Collections.singletonList(new AdditionalItemProperty()))
+                        .build());
+        final var supplier = getSupplier();
+        supplier.setStreetName("Av. Arequipa 123");
+        final var invoice = new Invoice()
+                        .withSupplier(supplier)
+                        .withCustomer(getCustomer())
+                        .withCurrency("PEN")
+                        .withNumber("F001-000156")
+                        .withDate(LocalDate.of(2020, 8, 16))
+                        .withNetTotal(new BigDecimal("200.30"))
+                        .withCrossTotal(new BigDecimal("236.90"))
+                        .withTax(new Taxes.IGV()
+                                        .setAmount(new BigDecimal("36"))
+                                        .setTaxableAmount(new BigDecimal("200")))
+                        .withTax(new Taxes.ICB()
+                                        .setAmount(new BigDecimal("0.60"))
+                                        .setTaxableAmount(new BigDecimal("0")))
+                        .withAllowanceCharge(new ChargeEntry()
+                                        .setReason("49")
+                                        .setBaseAmount(new BigDecimal("200"))
+                                        .setAmount(new BigDecimal("1.555"))
+                                        .setFactor(new BigDecimal("0.0078")))
+                        .withLines(lines);
+        assertStreamingSameAsJaxb(invoice);
+        assertStreamingSameAsJaxb(invoice.withFormattedOutput(false));
+        assertStreamingSameAsJaxb(invoice.withFormattedOutput(true).withEncoding(StandardCharsets.ISO_8859_1));
+
+        final var receipt = new Receipt()
+                        .withSupplier(getSupplier())
+                        .withCustomer(getCustomer())
+                        .withCurrency("PEN")
+                        .withNumber("B001-000156")
+                        .withDate(LocalDate.of(2020, 8, 16))
+                        .withNetTotal(new BigDecimal("100"))
+                        .withCrossTotal(new BigDecimal("118"))
+                        .withTax(new Taxes.IGV()
+                                        .setAmount(new BigDecimal("18"))
+                                        .setTaxableAmount(new BigDecimal("100")))
+                        .withLines(getLines())
+                        .withPaymentTerms(new IPaymentTerms()
+                        {
+
+                            @Override
+                            public boolean isCredit()
+                            {
+                                return true;
+                            }
+
+                            @Override
+                            public BigDecimal getTotal()
+                            {
+                                return new BigDecimal("118");
+                            }
+
+                            @Override
+                            public List<IInstallment> getInstallments()
+                            {
+                                return Collections.singletonList(new IInstallment()
+                                {
+
+                                    @Override
+                                    public BigDecimal getAmount()
+                                    {
+                                        return new BigDecimal("118");
+                                    }
+
+                                    @Override
+                                    public LocalDate getDueDate()
+                                    {
+                                        return LocalDate.of(2022, 4, 1);
+                                    }
+                                });
+                            }
+                        });
+        assertStreamingSameAsJaxb(receipt);
+
+        final var creditNote = new CreditNote()
+                        .withReference(new Reference()
+                                        .setNumber("F001-000156")
+                                        .setDate(LocalDate.of(2020, 6, 12))
+                                        .setDocType("01"))
+                        .withSupplier(getSupplier())
+                        .withCustomer(getCustomer())
+                        .withCurrency("PEN")
+                        .withNumber("NF01-000156")
+                        .withDate(LocalDate.of(2020, 6, 13))
+                        .withNetTotal(new BigDecimal("200.30"))
+                        .withCrossTotal(new BigDecimal("236.90"))
+                        .withPayableAmount(new BigDecimal("237"))
+                        .withTax(new Taxes.IGV()
+                                        .setAmount(new BigDecimal("36"))
+                                        .setTaxableAmount(new BigDecimal("200")))
+                        .withLines(lines)
+                        .withPaymentTerms(new IPaymentTerms()
+                        {
+
+                            @Override
+                            public boolean isCredit()
+                            {
+                                return false;
+                            }
+
+                            @Override
+                            public BigDecimal getTotal()
+                            {
+                                return new BigDecimal("237");
+                            }
+
+                            @Override
+                            public List<IInstallment> getInstallments()
+                            {
+                                return null;
+                            }
+                        });
+        assertStreamingSameAsJaxb(creditNote);
+
+        // missing values and carriage returns
+        final var customer = getCustomer();
+        customer.setAddressLine(null);
+        customer.setDOI(null);
+        final var supplierWithCR = getSupplier();
+        supplierWithCR.setName("Tiendas\r\nMass");
+        final var incomplete = new Invoice()
+                        .withSupplier(supplierWithCR)
+                        .withCustomer(customer)
+                        .withCurrency("PEN")
+                        .withDate(LocalDate.of(2020, 8, 16))
+                        .withNetTotal(new BigDecimal("100"))
+                        .withCrossTotal(new BigDecimal("118"))
+                        .withTax(new Taxes.IGV()
+                                        .setAmount(new BigDecimal("18"))
+                                        .setTaxableAmount(new BigDecimal("100")))
+                        .withLines(Collections.singletonList(Line.builder().withSku("123.456")
+                                        .withQuantity(new BigDecimal("2"))
+                                        .withUoMCode("NIU")
+                                        .withCrossUnitPrice(new BigDecimal("59"))
+                                        .withCrossPrice(new BigDecimal("118"))
+                                        .withNetUnitPrice(new BigDecimal("50"))
+                                        .withNetPrice(new BigDecimal("100"))
+                                        .withTax(new Taxes.IGV()
+                                                        .setAmount(new BigDecimal("18"))
+                                                        .setTaxableAmount(new BigDecimal("100")))
+                                        .build()));
+        assertStreamingSameAsJaxb(incomplete);
+        assertStreamingSameAsJaxb(incomplete.withFormattedOutput(false));
+    }
+
+    @Test
+    public void streamingWriterValidates()
+    {
+        final var invoice = new Invoice()
+                        .withSupplier(getSupplier())
+                        .withCustomer(getCustomer())
+                        .withCurrency("PEN")
+                        .withNumber("F001-000156")
+                        .withDate(LocalDate.of(2020, 8, 16))
+                        .withNetTotal(BigDecimal.ZERO)
+                        .withCrossTotal(BigDecimal.ZERO)
+                        .withLines(new ArrayList<>());
+        assertNull(invoice.withStreamingWriter(false).getUBLXml());
+        assertNull(invoice.withStreamingWriter(true).getUBLXml());
+        final var creditNote = new CreditNote()
+                        .withReference(new Reference()
+                                        .setNumber("F001-000156")
+                                        .setDate(LocalDate.of(2020, 6, 12))
+                                        .setDocType("01"))
+                        .withSupplier(getSupplier())
+                        .withCustomer(getCustomer())
+                        .withCurrency("PEN")
+                        .withNumber("NF01-000156")
+                        .withDate(LocalDate.of(2020, 6, 13))
+                        .withNetTotal(BigDecimal.ZERO)
+                        .withCrossTotal(BigDecimal.ZERO)
+                        .withLines(new ArrayList<>());
+        assertNull(creditNote.withStreamingWriter(false).getUBLXml());
+        assertNull(creditNote.withStreamingWriter(true).getUBLXml());
+    }
+
+    @Test
+    public void catalogCodesAreNotShared()
+    {
+        final var invoice = new Invoice()
+                        .withSupplier(getSupplier())
+                        .withCustomer(getCustomer())
+                        .withCurrency("PEN")
+                        .withNumber("F001-000156")
+                        .withDate(LocalDate.of(2020, 8, 16))
+                        .withNetTotal(new BigDecimal("200"))
+                        .withCrossTotal(new BigDecimal("236"))
+                        .withTax(new Taxes.IGV()
+                                        .setAmount(new BigDecimal("36"))
+                                        .setTaxableAmount(new BigDecimal("200")))
+                        .withLines(getMoreLines());
+        final var lines = invoice.createInvoice().getInvoiceLine();
+        final var other = invoice.createInvoice().getInvoiceLine();
+        final var priceTypeCode = lines.get(0).getPricingReference().getAlternativeConditionPriceAtIndex(0)
+                        .getPriceTypeCode();
+        final var otherPriceTypeCode = other.get(1).getPricingReference().getAlternativeConditionPriceAtIndex(0)
+                        .getPriceTypeCode();
+        assertNotSame(priceTypeCode, otherPriceTypeCode);
+        assertEquals(priceTypeCode.getValue(), otherPriceTypeCode.getValue());
+        // the catalog metadata is shared
+        assertSame(priceTypeCode.getListURI(), otherPriceTypeCode.getListURI());
+
+        final var category = lines.get(0).getTaxTotalAtIndex(0).getTaxSubtotalAtIndex(0).getTaxCategory();
+        final var otherCategory = other.get(1).getTaxTotalAtIndex(0).getTaxSubtotalAtIndex(0).getTaxCategory();
+        assertNotSame(category.getTaxScheme(), otherCategory.getTaxScheme());
+        assertNotSame(category.getTaxExemptionReasonCode(), otherCategory.getTaxExemptionReasonCode());
+
+        // changing a returned element does not change the next document
+        category.getTaxScheme().setName("CHANGED");
+        priceTypeCode.setValue("99");
+        final var again = invoice.createInvoice().getInvoiceLine();
+        assertEquals(again.get(0).getTaxTotalAtIndex(0).getTaxSubtotalAtIndex(0).getTaxCategory().getTaxScheme()
+                        .getNameValue(), otherCategory.getTaxScheme().getNameValue());
+        assertEquals(again.get(0).getPricingReference().getAlternativeConditionPriceAtIndex(0).getPriceTypeCodeValue(),
+                        otherPriceTypeCode.getValue());
+    }
+
+    @Test
+    public void documentTotals()
+    {
+        final var invoice = new Invoice()
+                        .withSupplier(getSupplier())
+                        .withCustomer(getCustomer())
+                        .withCurrency("PEN")
+                        .withNumber("F001-000156")
+                        .withDate(LocalDate.of(2020, 8, 16))
+                        .withNetTotal(new BigDecimal("200"))
+                        .withCrossTotal(new BigDecimal("236"))
+                        .withTax(new Taxes.IGV()
+                                        .setAmount(new BigDecimal("36.004"))
+                                        .setTaxableAmount(new BigDecimal("200")))
+                        .withAllowanceCharge(new ChargeEntry()
+                                        .setReason("49")
+                                        .setBaseAmount(new BigDecimal("200"))
+                                        .setAmount(new BigDecimal("4.005"))
+                                        .setFactor(new BigDecimal("0.02")))
+                        .withLines(getMoreLines());
+        final var totals = invoice.evalTotals(false);
+        assertEquals(totals.getLineExtension(0), new BigDecimal("100.00"));
+        assertEquals(totals.getConditionPrice(1), new BigDecimal("118"));
+        assertEquals(totals.getLineTaxAmount(1), new BigDecimal("18.00"));
+        assertEquals(totals.getLineExtension(), new BigDecimal("204.01"));
+        assertEquals(totals.getTaxAmount(), new BigDecimal("36.00"));
+        assertEquals(totals.getChargeTotal(), new BigDecimal("4.01"));
+        assertEquals(totals.getTaxSubtotals().size(), 1);
+        assertEquals(totals.getTaxSubtotals().get(0).getId(), "1000");
+        assertEquals(totals.getTaxSubtotals().get(0).getAmount(), new BigDecimal("36"));
+        assertEquals(totals.getTaxSubtotals().get(0).getTaxableAmount(), new BigDecimal("200"));
+
+        final var monetaryTotal = invoice.createInvoice().getLegalMonetaryTotal();
+        assertEquals(monetaryTotal.getLineExtensionAmountValue(), totals.getLineExtension());
+        assertEquals(monetaryTotal.getChargeTotalAmountValue(), totals.getChargeTotal());
+        assertStreamingSameAsJaxb(invoice);
+    }
+
+    @Test
+    public void deriveTaxes()
+    {
+        final var lines = new ArrayList<ILine>();
+        for (var i = 0; i < 2; i++) {
+            lines.add(Line.builder().withSku("123.456")
+                            .withDescription("Lenovo Tablet")
+                            .withQuantity(BigDecimal.ONE)
+                            .withCrossUnitPrice(new BigDecimal("118.004"))
+                            .withCrossPrice(new BigDecimal("118.004"))
+                            .withNetUnitPrice(new BigDecimal("100"))
+                            .withNetPrice(new BigDecimal("100"))
+                            .withTax(new Taxes.IGV()
+                                            .setAmount(new BigDecimal("18.004"))
+                                            .setTaxableAmount(new BigDecimal("100")))
+                            .build());
+        }
+        final var invoice = new Invoice()
+                        .withSupplier(getSupplier())
+                        .withCustomer(getCustomer())
+                        .withCurrency("PEN")
+                        .withNumber("F001-000156")
+                        .withDate(LocalDate.of(2020, 8, 16))
+                        .withNetTotal(new BigDecimal("200"))
+                        .withCrossTotal(new BigDecimal("236.01"))
+                        .withDeriveTaxes(true)
+                        .withLines(lines);
+        final var taxTotal = invoice.createInvoice().getTaxTotalAtIndex(0);
+        assertEquals(taxTotal.getTaxAmountValue(), new BigDecimal("36.01"));
+        assertEquals(taxTotal.getTaxSubtotalCount(), 1);
+        assertEquals(taxTotal.getTaxSubtotalAtIndex(0).getTaxableAmountValue(), new BigDecimal("200.00"));
+        assertEquals(taxTotal.getTaxSubtotalAtIndex(0).getTaxAmountValue(), new BigDecimal("36.01"));
+        assertStreamingSameAsJaxb(invoice);
+
+        invoice.withTax(new Taxes.IGV()
+                        .setAmount(new BigDecimal("36"))
+                        .setTaxableAmount(new BigDecimal("200")));
+        final var differences = invoice.evalTotals(false).getTaxDifferences();
+        assertEquals(differences.size(), 1);
+        assertEquals(differences.get(0).getId(), "1000");
+        assertEquals(differences.get(0).getGiven(), new BigDecimal("36.00"));
+        assertEquals(differences.get(0).getDerived(), new BigDecimal("36.01"));
+        assertEquals(invoice.withDeriveTaxes(false).evalTotals(false).getTaxAmount(), new BigDecimal("36.00"));
+    }
+
+    @Test
+    public void customTaxWithoutId()
+    {
+        final var tax = new ITaxEntry()
+        {
+
+            @Override
+            public BigDecimal getAmount()
+            {
+                return new BigDecimal("18");
+            }
+
+            @Override
+            public BigDecimal getTaxableAmount()
+            {
+                return new BigDecimal("100");
+            }
+
+            @Override
+            public BigDecimal getPercent()
+            {
+                return new BigDecimal("18");
+            }
+
+            @Override
+            public String getId()
+            {
+                return null;
+            }
+
+            @Override
+            public String getName()
+            {
+                return "IGV";
+            }
+
+            @Override
+            public String getCode()
+            {
+                return "VAT";
+            }
+
+            @Override
+            public String getTaxExemptionReasonCode()
+            {
+                return "10";
+            }
+        };
+        final var invoice = new Invoice()
+                        .withSupplier(getSupplier())
+                        .withCustomer(getCustomer())
+                        .withCurrency("PEN")
+                        .withNumber("F001-000156")
+                        .withDate(LocalDate.of(2020, 8, 16))
+                        .withNetTotal(new BigDecimal("100"))
+                        .withCrossTotal(new BigDecimal("118"))
+                        .withTax(tax)
+                        .withLines(Collections.singletonList(Line.builder().withSku("123.456")
+                                        .withDescription("Lenovo Tablet")
+                                        .withQuantity(BigDecimal.ONE)
+                                        .withCrossUnitPrice(new BigDecimal("118"))
+                                        .withCrossPrice(new BigDecimal("118"))
+                                        .withNetUnitPrice(new BigDecimal("100"))
+                                        .withNetPrice(new BigDecimal("100"))
+                                        .withTax(tax)
+                                        .build()));
+        assertNotNull(invoice.getUBLXml());
+        assertStreamingSameAsJaxb(invoice);
+
+        final var totals = invoice.withDeriveTaxes(true).evalTotals(false);
+        assertEquals(totals.getTaxSubtotals().size(), 1);
+        assertNull(totals.getTaxSubtotals().get(0).getId());
+        assertEquals(totals.getTaxAmount(), new BigDecimal("18.00"));
+        assertTrue(totals.getTaxDifferences().isEmpty());
+    }
+
+    @Test
+    public void linesFromColumns()
+    {
+        final var descriptions = getMoreLines().stream().map(ILine::getDescription).toArray(String[]::new);
+        final var lines = LinesBuilder.of(new String[] { "123.456", "123.456" },
+                        new BigDecimal[] { BigDecimal.ONE, BigDecimal.ONE },
+                        new BigDecimal[] { new BigDecimal("100"), new BigDecimal("100") })
+                        .withDescriptions(descriptions)
+                        .withCrossUnitPrices(new BigDecimal[] { new BigDecimal("118"), new BigDecimal("118") })
+                        .withCrossPrices(new BigDecimal[] { new BigDecimal("118"), new BigDecimal("118") })
+                        .withTax(TaxDefinition.IGV, new BigDecimal[] { new BigDecimal("18"), new BigDecimal("18") })
+                        .build();
+        final var invoice = new Invoice()
+                        .withSupplier(getSupplier())
+                        .withCustomer(getCustomer())
+                        .withCurrency("PEN")
+                        .withNumber("F001-000156")
+                        .withDate(LocalDate.of(2020, 8, 16))
+                        .withNetTotal(new BigDecimal("200"))
+                        .withCrossTotal(new BigDecimal("236"))
+                        .withTax(TaxDefinition.IGV.of(new BigDecimal("36"), new BigDecimal("200")));
+        final var fromColumns = invoice.withLines(lines).getUBLXml();
+        final var fromBuilder = invoice.withLines(getMoreLines()).getUBLXml();
+        assertEquals(fromColumns, fromBuilder);
+        assertSame(new Taxes.IGV().getPercent(), new Taxes.IGV().getPercent());
+        assertSame(lines.get(0).getTaxEntries().get(0).getPercent(), TaxDefinition.IGV.getPercent());
+    }
+
+    private void assertStreamingSameAsJaxb(final AbstractDocument<?> document)
+    {
+        final var jaxb = document.withStreamingWriter(false).getUBLXml();
+        final var streaming = document.withStreamingWriter(true).getUBLXml();
+        document.withStreamingWriter(false);
+        assertEquals(streaming, jaxb);
+    }
+
 }
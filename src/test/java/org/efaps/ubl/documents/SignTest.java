@@ -16,31 +16,72 @@
 package org.efaps.ubl.documents;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertThrows;
 import static org.testng.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyStore;
+import java.security.KeyStore.PrivateKeyEntry;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.xml.crypto.dsig.XMLSignature;
 import javax.xml.crypto.dsig.XMLSignatureException;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.commons.io.FileUtils;
+import org.efaps.ubl.BatchSigner;
+import org.efaps.ubl.CredentialCache;
 import org.efaps.ubl.Signing;
+import org.efaps.ubl.SigningException;
 import org.efaps.ubl.documents.elements.Taxes;
+import org.efaps.ubl.instrumentation.Instrumentation;
+import org.efaps.ubl.instrumentation.Instrumentations;
+import org.efaps.ubl.instrumentation.MarshalEvent;
+import org.efaps.ubl.instrumentation.Operation;
+import org.efaps.ubl.instrumentation.Phase;
+import org.efaps.ubl.instrumentation.SignEvent;
+import org.efaps.ubl.instrumentation.SummaryBuildEvent;
+import org.efaps.ubl.marshaller.DocumentType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.annotations.Test;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 
+import com.helger.ubl21.CUBL21;
 import com.helger.xmldsig.XMLDSigValidator;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+
 public class SignTest
 {
     private static final Logger LOG = LoggerFactory.getLogger(SignTest.class);
@@ -162,4 +203,521 @@ public class SignTest
         final var validation = XMLDSigValidator.validateSignature(doc);
         assertTrue(validation.isSignatureValid());
     }
+
+    @Test
+    public void signUnformattedInvoice()
+        throws IOException, SAXException, ParserConfigurationException, XMLSignatureException
+    {
+        final var invoice = new Invoice()
+                        .withSupplier(DocTest.getSupplier())
+                        .withCustomer(DocTest.getCustomer())
+                        .withCurrency("PEN")
+                        .withNumber("F001-000156")
+                        .withDate(LocalDate.of(2020, 8, 16))
+                        .withNetTotal(new BigDecimal("100"))
+                        .withCrossTotal(new BigDecimal("118"))
+                        .withTax(new Taxes.IGV()
+                                        .setAmount(new BigDecimal("18"))
+                                        .setTaxableAmount(new BigDecimal("100")))
+                        .withLines(DocTest.getLines())
+                        .withFormattedOutput(false);
+        final var ubl = invoice.getUBLXml();
+        assertFalse(ubl.contains("\n "));
+        final var signed = new Signing()
+                        .withKeyStorePath("keystore.jks")
+                        .withKeyStorePwd("changeit")
+                        .withKeyAlias("testkey")
+                        .withKeyPwd("changeit")
+                        .signDocument(ubl)
+                        .getUbl();
+        final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        final Document doc = dbf.newDocumentBuilder().parse(new ByteArrayInputStream(signed.getBytes()));
+        final var validation = XMLDSigValidator.validateSignature(doc);
+        assertTrue(validation.isSignatureValid());
+    }
+
+    @Test
+    public void credentialsAreCached()
+        throws IOException
+    {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final File file = new File(classLoader.getResource("Invoice3.xml").getFile());
+        final var xml = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        final var signing = new Signing()
+                        .withKeyStorePath("keystore.jks")
+                        .withKeyStorePwd("changeit")
+                        .withKeyAlias("testkey")
+                        .withKeyPwd("changeit");
+        assertNotNull(signing.signDocument(xml));
+        final var cache = signing.getCredentialCache();
+        final var loads = cache.getLoadCount();
+        final var hits = cache.getHitCount();
+        assertNotNull(signing.signDocument(xml));
+        assertEquals(cache.getLoadCount(), loads);
+        assertTrue(cache.getHitCount() > hits);
+    }
+
+    @Test
+    public void failedReloadKeepsKey()
+        throws IOException
+    {
+        final var keyStore = Files.createTempFile("keystore", ".jks");
+        try {
+            Files.copy(Path.of("keystore.jks"), keyStore, StandardCopyOption.REPLACE_EXISTING);
+            final var cache = CredentialCache.of(keyStore.toString(), "testkey").withCheckInterval(Duration.ZERO);
+            final var keyEntry = cache.getKeyEntry("changeit", "changeit");
+            assertNotNull(keyEntry);
+            assertNull(cache.getKeyEntry("wrong", "changeit"));
+            assertSame(cache.getKeyEntry("changeit", "changeit"), keyEntry);
+
+            // a keystore that is being replaced can not be read
+            Files.write(keyStore, new byte[] { 1, 2, 3 });
+            Files.setLastModifiedTime(keyStore, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+            final var loads = cache.getLoadCount();
+            assertSame(cache.getKeyEntry("changeit", "changeit"), keyEntry);
+            assertSame(cache.getKeyEntry("changeit", "changeit"), keyEntry);
+            assertEquals(cache.getLoadCount(), loads + 1);
+
+            Files.copy(Path.of("keystore.jks"), keyStore, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(keyStore, FileTime.fromMillis(System.currentTimeMillis() + 20_000));
+            assertNotNull(cache.getKeyEntry("changeit", "changeit"));
+            assertEquals(cache.getLoadCount(), loads + 2);
+        } finally {
+            Files.deleteIfExists(keyStore);
+        }
+    }
+
+    @Test
+    public void modificationTimeCheckedPerInterval()
+        throws IOException
+    {
+        final var keyStore = Files.createTempFile("keystore", ".jks");
+        try {
+            Files.copy(Path.of("keystore.jks"), keyStore, StandardCopyOption.REPLACE_EXISTING);
+            final var cache = CredentialCache.of(keyStore.toString(), "testkey")
+                            .withCheckInterval(Duration.ofHours(1));
+            final var passwords = CredentialCache.Passwords.of("changeit", "changeit");
+            final var keyEntry = cache.getKeyEntry(passwords);
+            assertNotNull(keyEntry);
+            final var loads = cache.getLoadCount();
+            // within the interval the modification is not noticed
+            Files.setLastModifiedTime(keyStore, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+            assertSame(cache.getKeyEntry(passwords), keyEntry);
+            assertEquals(cache.getLoadCount(), loads);
+            // other passwords are still checked
+            assertNull(cache.getKeyEntry("wrong", "changeit"));
+
+            cache.withCheckInterval(Duration.ZERO);
+            assertNotNull(cache.getKeyEntry(passwords));
+            assertEquals(cache.getLoadCount(), loads + 2);
+        } finally {
+            Files.deleteIfExists(keyStore);
+        }
+    }
+
+    @Test
+    public void keyFromSubclass()
+        throws Exception
+    {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final File file = new File(classLoader.getResource("Invoice3.xml").getFile());
+        final var xml = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        final var keyStore = KeyStore.getInstance("JKS");
+        try (var in = Files.newInputStream(Path.of("keystore.jks"))) {
+            keyStore.load(in, "changeit".toCharArray());
+        }
+        final var keyEntry = (PrivateKeyEntry) keyStore.getEntry("testkey",
+                        new KeyStore.PasswordProtection("changeit".toCharArray()));
+        final var calls = new AtomicInteger();
+        // no keystore configured, the key is provided by the subclass only
+        final var signing = new Signing()
+        {
+
+            @Override
+            protected PrivateKeyEntry getKeyEntry()
+            {
+                calls.incrementAndGet();
+                return keyEntry;
+            }
+        };
+        final var signed = signing.signDocument(xml).getUbl();
+        // one lookup per document
+        assertEquals(calls.get(), 1);
+        final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        final Document doc = dbf.newDocumentBuilder().parse(new ByteArrayInputStream(signed.getBytes()));
+        assertTrue(XMLDSigValidator.validateSignature(doc).isSignatureValid());
+
+        final var keyAndCertificate = new Signing()
+        {
+
+            @Override
+            protected PrivateKey getPrivateKey()
+            {
+                return keyEntry.getPrivateKey();
+            }
+
+            @Override
+            protected X509Certificate getCertificate()
+            {
+                return (X509Certificate) keyEntry.getCertificate();
+            }
+        };
+        assertEquals(keyAndCertificate.signDocument(xml).getUbl(), signed);
+    }
+
+    @Test
+    public void instrumentation()
+        throws Exception
+    {
+        final var phases = Collections.synchronizedList(new ArrayList<Phase>());
+        final var documents = Collections.synchronizedList(new ArrayList<Object[]>());
+        Instrumentations.set(new Instrumentation()
+        {
+
+            @Override
+            public void onPhase(final Phase phase,
+                                final DocumentType documentType,
+                                final long nanos)
+            {
+                phases.add(phase);
+            }
+
+            @Override
+            public void onDocument(final Operation operation,
+                                   final DocumentType documentType,
+                                   final int lines,
+                                   final long bytes,
+                                   final long nanos)
+            {
+                documents.add(new Object[] { operation, documentType, lines, bytes });
+            }
+        });
+        try {
+            final var invoice = new Invoice()
+                            .withSupplier(DocTest.getSupplier())
+                            .withCustomer(DocTest.getCustomer())
+                            .withCurrency("PEN")
+                            .withNumber("F001-000156")
+                            .withDate(LocalDate.of(2020, 8, 16))
+                            .withNetTotal(new BigDecimal("100"))
+                            .withCrossTotal(new BigDecimal("118"))
+                            .withTax(new Taxes.IGV()
+                                            .setAmount(new BigDecimal("18"))
+                                            .setTaxableAmount(new BigDecimal("100")))
+                            .withLines(DocTest.getLines());
+            final var ubl = invoice.getUBLXml();
+            final var signing = new Signing()
+                            .withKeyStorePath("keystore.jks")
+                            .withKeyStorePwd("changeit")
+                            .withKeyAlias("testkey")
+                            .withKeyPwd("changeit");
+            final var bytes = signing.getEngine().signToBytes(ubl, StandardCharsets.UTF_8).getBytes();
+            final var signed = signing.signDocument(ubl).getUbl();
+
+            assertEquals(phases, List.of(Phase.BUILD, Phase.MARSHAL,
+                            Phase.PARSE, Phase.NORMALIZE, Phase.SIGN, Phase.SERIALIZE,
+                            Phase.PARSE, Phase.NORMALIZE, Phase.SIGN, Phase.SERIALIZE));
+            assertEquals(documents.size(), 3);
+            assertEquals(documents.get(0), new Object[] { Operation.GENERATE, DocumentType.INVOICE,
+                            DocTest.getLines().size(), (long) ubl.getBytes(StandardCharsets.UTF_8).length });
+            assertEquals(documents.get(1), new Object[] { Operation.SIGN, DocumentType.INVOICE,
+                            DocTest.getLines().size(), (long) bytes.length });
+            assertEquals(documents.get(2), new Object[] { Operation.SIGN, DocumentType.INVOICE,
+                            DocTest.getLines().size(), (long) signed.getBytes(StandardCharsets.UTF_8).length });
+        } finally {
+            Instrumentations.set(null);
+        }
+    }
+
+    @Test
+    public void instrumentationSplitsPhases()
+    {
+        final var nanos = new EnumMap<Phase, Long>(Phase.class);
+        Instrumentations.set(new Instrumentation()
+        {
+
+            @Override
+            public void onPhase(final Phase phase,
+                                final DocumentType documentType,
+                                final long phaseNanos)
+            {
+                nanos.put(phase, phaseNanos);
+            }
+
+            @Override
+            public void onDocument(final Operation operation,
+                                   final DocumentType documentType,
+                                   final int lines,
+                                   final long bytes,
+                                   final long documentNanos)
+            {
+                // only the phases are checked
+            }
+        });
+        try {
+            Instrumentations.generate(DocumentType.INVOICE, "F001-000156", 1, StandardCharsets.UTF_8, () -> {
+                sleep(100);
+                return "jaxb";
+            }, jaxb -> {
+                sleep(300);
+                return "<Invoice/>";
+            });
+            final var build = TimeUnit.NANOSECONDS.toMillis(nanos.get(Phase.BUILD));
+            final var marshal = TimeUnit.NANOSECONDS.toMillis(nanos.get(Phase.MARSHAL));
+            assertTrue(build >= 100 && build < 300, "build " + build);
+            assertTrue(marshal >= 300, "marshal " + marshal);
+        } finally {
+            Instrumentations.set(null);
+        }
+    }
+
+    private static void sleep(final long millis)
+    {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void flightRecorderEvents()
+        throws Exception
+    {
+        final var file = Files.createTempFile("ubl", ".jfr");
+        try (var recording = new Recording()) {
+            recording.enable(MarshalEvent.class).withoutThreshold();
+            recording.enable(SignEvent.class).withoutThreshold();
+            recording.enable(SummaryBuildEvent.class).withoutThreshold();
+            recording.start();
+            final var invoice = new Invoice()
+                            .withSupplier(DocTest.getSupplier())
+                            .withCustomer(DocTest.getCustomer())
+                            .withCurrency("PEN")
+                            .withNumber("F001-000156")
+                            .withDate(LocalDate.of(2020, 8, 16))
+                            .withNetTotal(new BigDecimal("100"))
+                            .withCrossTotal(new BigDecimal("118"))
+                            .withTax(new Taxes.IGV()
+                                            .setAmount(new BigDecimal("18"))
+                                            .setTaxableAmount(new BigDecimal("100")))
+                            .withLines(DocTest.getLines());
+            final var ubl = invoice.getUBLXml();
+            final var signed = new Signing()
+                            .withKeyStorePath("keystore.jks")
+                            .withKeyStorePwd("changeit")
+                            .withKeyAlias("testkey")
+                            .withKeyPwd("changeit")
+                            .signDocument(ubl).getUbl();
+            recording.stop();
+            recording.dump(file);
+
+            final var events = RecordingFile.readAllEvents(file);
+            final var marshal = events.stream()
+                            .filter(event -> "org.efaps.ubl.Marshal".equals(event.getEventType().getName()))
+                            .findFirst().orElseThrow();
+            assertEquals(marshal.getString("number"), "F001-000156");
+            assertEquals(marshal.getString("documentType"), DocumentType.INVOICE.name());
+            assertEquals(marshal.getInt("lines"), DocTest.getLines().size());
+            assertEquals(marshal.getLong("bytes"), ubl.getBytes(StandardCharsets.UTF_8).length);
+            final var sign = events.stream()
+                            .filter(event -> "org.efaps.ubl.Sign".equals(event.getEventType().getName()))
+                            .findFirst().orElseThrow();
+            assertEquals(sign.getString("number"), "F001-000156");
+            assertEquals(sign.getString("documentType"), DocumentType.INVOICE.name());
+            assertEquals(sign.getInt("lines"), DocTest.getLines().size());
+            assertEquals(sign.getLong("bytes"), signed.getBytes(StandardCharsets.UTF_8).length);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void sharedEngine()
+        throws Exception
+    {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final File file = new File(classLoader.getResource("Invoice3.xml").getFile());
+        final var xml = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        final var engine = new Signing()
+                        .withKeyStorePath("keystore.jks")
+                        .withKeyStorePwd("changeit")
+                        .withKeyAlias("testkey")
+                        .withKeyPwd("changeit")
+                        .getEngine();
+        final var expected = engine.signDocument(xml).getUbl();
+        final var executor = Executors.newFixedThreadPool(4);
+        try {
+            final var futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> engine.signDocument(xml).getUbl()));
+            }
+            for (final var future : futures) {
+                assertEquals(future.get(), expected);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void signAll()
+        throws Exception
+    {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final var invoice = FileUtils.readFileToString(
+                        new File(classLoader.getResource("Invoice3.xml").getFile()), StandardCharsets.UTF_8);
+        final var creditNote = FileUtils.readFileToString(
+                        new File(classLoader.getResource("CreditNote1.xml").getFile()), StandardCharsets.UTF_8);
+        final var signing = new Signing()
+                        .withKeyStorePath("keystore.jks")
+                        .withKeyStorePwd("changeit")
+                        .withKeyAlias("testkey")
+                        .withKeyPwd("changeit");
+        final var xmls = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            xmls.add(i % 2 == 0 ? invoice : creditNote);
+        }
+        xmls.add(5, "<Invoice");
+        final var responses = BatchSigner.of(signing.getEngine())
+                        .withParallelism(3)
+                        .withMaxInFlight(2)
+                        .signAll(xmls.stream());
+        assertEquals(responses.size(), xmls.size());
+        final var expectedInvoice = signing.signDocument(invoice).getUbl();
+        final var expectedCreditNote = signing.signDocument(creditNote).getUbl();
+        for (int i = 0; i < xmls.size(); i++) {
+            final var response = responses.get(i);
+            if (i == 5) {
+                assertFalse(response.isSigned());
+                assertNotNull(response.getError());
+            } else {
+                assertTrue(response.isSigned());
+                assertEquals(response.getUbl(), xmls.get(i) == invoice ? expectedInvoice : expectedCreditNote);
+            }
+        }
+    }
+
+    @Test
+    public void sameAsJaxbRoundTrip()
+        throws Exception
+    {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        for (final var resource : new String[] { "Invoice1.xml", "CreditNote1.xml", "DeliveryNote1.xml",
+                        "Summary1.xml" }) {
+            final var xml = FileUtils.readFileToString(new File(classLoader.getResource(resource).getFile()),
+                            StandardCharsets.UTF_8);
+            final var signing = new Signing()
+                            .withKeyStorePath("keystore.jks")
+                            .withKeyStorePwd("changeit")
+                            .withKeyAlias("testkey")
+                            .withKeyPwd("changeit");
+            final var dom = signing.signDocument(xml);
+            final var jaxb = signing.withJaxbRoundTrip(true).signDocument(xml);
+            assertEquals(dom.getUbl(), jaxb.getUbl(), resource);
+            assertEquals(dom.getHash(), jaxb.getHash(), resource);
+        }
+    }
+
+    @Test
+    public void sameAsJaxbRoundTripWithExtension()
+        throws Exception
+    {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final var xml = FileUtils.readFileToString(new File(classLoader.getResource("Invoice1.xml").getFile()),
+                        StandardCharsets.UTF_8)
+                        .replace("  <cbc:UBLVersionID>", "  <ext:UBLExtensions>\n"
+                                        + "    <ext:UBLExtension>\n"
+                                        + "      <ext:ExtensionContent>\n"
+                                        + "        <cbc:Note>Existing</cbc:Note>\n"
+                                        + "      </ext:ExtensionContent>\n"
+                                        + "    </ext:UBLExtension>\n"
+                                        + "  </ext:UBLExtensions>\n"
+                                        + "  <cbc:UBLVersionID>");
+        final var signing = new Signing()
+                        .withKeyStorePath("keystore.jks")
+                        .withKeyStorePwd("changeit")
+                        .withKeyAlias("testkey")
+                        .withKeyPwd("changeit");
+        final var dom = signing.signDocument(xml);
+        final var jaxb = signing.withJaxbRoundTrip(true).signDocument(xml);
+        assertEquals(dom.getUbl(), jaxb.getUbl());
+        assertEquals(dom.getHash(), jaxb.getHash());
+
+        final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        final Document doc = dbf.newDocumentBuilder()
+                        .parse(new ByteArrayInputStream(dom.getUbl().getBytes(StandardCharsets.UTF_8)));
+        final var content = doc.getElementsByTagNameNS(CUBL21.XML_SCHEMA_CEC_NAMESPACE_URL, "ExtensionContent")
+                        .item(0);
+        assertEquals(((Element) content).getElementsByTagNameNS(XMLSignature.XMLNS, "Signature").getLength(), 1);
+        assertTrue(XMLDSigValidator.validateSignature(doc).isSignatureValid());
+    }
+
+    @Test
+    public void rejectDoctype()
+        throws Exception
+    {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final var secret = Files.createTempFile("secret", ".txt");
+        try {
+            Files.writeString(secret, "SECRET-XXE-MARKER");
+            final var xml = FileUtils.readFileToString(new File(classLoader.getResource("Invoice1.xml").getFile()),
+                            StandardCharsets.UTF_8)
+                            .replace("<Invoice ", "<!DOCTYPE Invoice [<!ENTITY x SYSTEM \"" + secret.toUri()
+                                            + "\">]>\n<Invoice ")
+                            .replace("<cbc:ID>F001-000156</cbc:ID>", "<cbc:ID>&x;</cbc:ID>");
+            final var signing = new Signing()
+                            .withKeyStorePath("keystore.jks")
+                            .withKeyStorePwd("changeit")
+                            .withKeyAlias("testkey")
+                            .withKeyPwd("changeit");
+            assertThrows(SigningException.class, () -> signing.getEngine().sign(xml, StandardCharsets.UTF_8));
+            assertNull(signing.signDocument(xml));
+            assertNull(signing.withJaxbRoundTrip(true).signDocument(xml));
+        } finally {
+            Files.deleteIfExists(secret);
+        }
+    }
+
+    @Test
+    public void signToStream()
+        throws Exception
+    {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final var engine = new Signing()
+                        .withKeyStorePath("keystore.jks")
+                        .withKeyStorePwd("changeit")
+                        .withKeyAlias("testkey")
+                        .withKeyPwd("changeit")
+                        .getEngine();
+        for (final var charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1 }) {
+            final var resource = StandardCharsets.UTF_8.equals(charset) ? "Invoice3.xml" : "InvoiceISOEncoding.xml";
+            final var xml = FileUtils.readFileToString(new File(classLoader.getResource(resource).getFile()),
+                            charset);
+            final var expected = engine.sign(xml, charset);
+            final var expectedBytes = expected.getUbl().getBytes(charset);
+
+            final var bytes = engine.signToBytes(xml, charset);
+            assertEquals(bytes.getBytes(), expectedBytes);
+            assertEquals(bytes.getHash(), expected.getHash());
+
+            final var out = new ByteArrayOutputStream();
+            final var channel = engine.sign(xml, charset, Channels.newChannel(out));
+            assertEquals(out.toByteArray(), expectedBytes);
+            assertEquals(channel.getHash(), expected.getHash());
+            assertNull(channel.getUbl());
+
+            final var path = Files.createTempFile("signed", ".xml");
+            try {
+                final var file = engine.sign(xml, charset, path);
+                assertEquals(file.getPath(), path);
+                assertEquals(Files.readAllBytes(path), expectedBytes);
+            } finally {
+                Files.delete(path);
+            }
+        }
+    }
 }
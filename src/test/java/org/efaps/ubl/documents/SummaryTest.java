@@ -16,6 +16,7 @@
 package org.efaps.ubl.documents;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
@@ -24,6 +25,8 @@ import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
 import org.efaps.ubl.Signing;
@@ -78,6 +81,69 @@ public class SummaryTest
         assertEquals(dto.getUbl(), xml.trim());
     }
 
+    @Test
+    public void createSummarySigningFromDocument()
+        throws IOException
+    {
+        final var summary = new Summary().setNumber("RC-20230228-1001")
+                        .setReferenceDate(LocalDate.of(2023, 02, 28))
+                        .setIssueDate(LocalDate.of(2023, 02, 28))
+                        .setSupplier(DocTest.getSupplier())
+                        .setLines(getLines());
+
+        final var dto = new Signing()
+                        .withKeyStorePath("keystore.jks")
+                        .withKeyStorePwd("changeit")
+                        .withKeyAlias("testkey")
+                        .withKeyPwd("changeit")
+                        .signDocument(summary);
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final File file = new File(classLoader.getResource("SummaryWithSignature.xml").getFile());
+        final var xml = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        assertEquals(dto.getUbl(), xml.trim());
+    }
+
+    @Test
+    public void concurrentGeneration()
+        throws Exception
+    {
+        final var summary = new Summary().setNumber("RC-20230228-1001")
+                        .setReferenceDate(LocalDate.of(2023, 02, 28))
+                        .setIssueDate(LocalDate.of(2023, 02, 28))
+                        .setSupplier(DocTest.getSupplier())
+                        .setLines(getLines());
+        final var invoice = new Invoice()
+                        .withSupplier(DocTest.getSupplier())
+                        .withCustomer(DocTest.getCustomer())
+                        .withCurrency("PEN")
+                        .withNumber("F001-000156")
+                        .withDate(LocalDate.of(2020, 8, 16))
+                        .withNetTotal(new BigDecimal("100"))
+                        .withCrossTotal(new BigDecimal("118"))
+                        .withTax(new Taxes.IGV()
+                                        .setAmount(new BigDecimal("18"))
+                                        .setTaxableAmount(new BigDecimal("100")))
+                        .withLines(DocTest.getLines());
+        final var expectedSummary = summary.getUBLXml();
+        final var expectedInvoice = invoice.getUBLXml();
+        final var executor = Executors.newFixedThreadPool(4);
+        try {
+            final var futures = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 40; i++) {
+                if (i % 2 == 0) {
+                    futures.add(executor.submit(() -> summary.getUBLXml().equals(expectedSummary)));
+                } else {
+                    futures.add(executor.submit(() -> invoice.getUBLXml().equals(expectedInvoice)));
+                }
+            }
+            for (final var future : futures) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     public static List<ISummaryLine> getLines()
     {
         final var ret = new ArrayList<ISummaryLine>();
@@ -0,0 +1,60 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.documents.elements;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Locale;
+
+import org.efaps.number2words.Converter;
+import org.testng.annotations.Test;
+
+public class AmountWordsTest
+{
+
+    @Test
+    public void sameAsConverter()
+    {
+        AmountWords.clear();
+        for (var i = 0; i < 3000; i++) {
+            final var amount = BigDecimal.valueOf(i * 7919L % 2_000_000L, i % 4);
+            final var expected = new StringBuilder().append(Converter.getMaleConverter(new Locale("es"))
+                            .convert(amount.longValue())).append(" y ")
+                            .append(amount.setScale(2, RoundingMode.HALF_UP).toPlainString()
+                                            .replaceAll("^.*\\.", ""))
+                            .append("/100 ").toString().toUpperCase();
+            assertEquals(AmountWords.get(amount), expected);
+        }
+    }
+
+    @Test
+    public void cached()
+    {
+        AmountWords.clear();
+        assertEquals(AmountWords.get(new BigDecimal("118")), AmountWords.get(new BigDecimal("118.00")));
+        assertEquals(AmountWords.get(new BigDecimal("118.50")), "CIENTO DIECIOCHO Y 50/100 ");
+        assertEquals(AmountWords.getMissCount(), 1);
+        assertEquals(AmountWords.getHitCount(), 2);
+        assertTrue(AmountWords.getHitRate() > 0.6);
+        for (var i = 0; i < AmountWords.MAX_SIZE * 2; i++) {
+            AmountWords.get(BigDecimal.valueOf(i));
+        }
+        assertEquals(AmountWords.size(), AmountWords.MAX_SIZE);
+    }
+}
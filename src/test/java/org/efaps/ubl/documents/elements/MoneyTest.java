@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.documents.elements;
+
+import static org.testng.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class MoneyTest
+{
+
+    @Test
+    public void sameAsBigDecimal()
+    {
+        final var random = new Random(4711);
+        final var money = new Money();
+        for (var i = 0; i < 1000; i++) {
+            money.reset();
+            var expected = BigDecimal.ZERO;
+            for (var j = 0; j < 20; j++) {
+                final var amount = BigDecimal.valueOf(random.nextLong() % 100_000_000_000L, random.nextInt(9));
+                if (random.nextBoolean()) {
+                    money.add(amount);
+                    expected = expected.add(amount);
+                } else {
+                    money.subtract(amount);
+                    expected = expected.subtract(amount);
+                }
+                assertEquals(Money.round(amount), amount.setScale(2, RoundingMode.HALF_UP));
+            }
+            assertEquals(money.toBigDecimal(), expected);
+            assertEquals(money.round(), expected.setScale(2, RoundingMode.HALF_UP));
+        }
+    }
+
+    @Test
+    public void roundHalfUp()
+    {
+        assertEquals(Money.round(new BigDecimal("1.005")), new BigDecimal("1.01"));
+        assertEquals(Money.round(new BigDecimal("-1.005")), new BigDecimal("-1.01"));
+        assertEquals(Money.round(new BigDecimal("1.004999")), new BigDecimal("1.00"));
+        assertEquals(Money.round(new BigDecimal("118")), new BigDecimal("118.00"));
+    }
+
+    @Test
+    public void overflow()
+    {
+        final var big = new BigDecimal("9000000000000.000001");
+        final var money = new Money().add(big).add(big);
+        assertEquals(money.toBigDecimal(), big.add(big));
+        final var sum = new Money().add(new BigDecimal("9000000000000")).add(new BigDecimal("9000000000000"));
+        assertEquals(sum.toBigDecimal(), new BigDecimal("18000000000000"));
+        assertEquals(sum.round(), new BigDecimal("18000000000000.00"));
+    }
+}
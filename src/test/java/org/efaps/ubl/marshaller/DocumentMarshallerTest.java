@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2003 - 2024 The eFaps Team (-)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.efaps.ubl.marshaller;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+import org.testng.annotations.Test;
+
+import jakarta.xml.bind.JAXBException;
+
+public class DocumentMarshallerTest
+{
+
+    @Test
+    public void contextIsShared()
+        throws JAXBException
+    {
+        final var context = DocumentMarshaller.invoice().getJAXBContext(null);
+        assertSame(DocumentMarshaller.invoice().getJAXBContext(null), context);
+        assertSame(DocumentMarshaller.creditNote().getJAXBContext(null), context);
+        assertSame(DocumentMarshaller.deliveryNote().getJAXBContext(null), context);
+        assertSame(DocumentMarshaller.applicationResponse().getJAXBContext(null), context);
+        final var summaryContext = DocumentMarshaller.summary().getJAXBContext(null);
+        assertSame(DocumentMarshaller.summary().getJAXBContext(null), summaryContext);
+        assertNotSame(summaryContext, context);
+    }
+
+    @Test
+    public void validate()
+        throws IOException
+    {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        for (final var resource : new String[] { "Invoice1.xml", "CreditNote1.xml", "DeliveryNote1.xml" }) {
+            final var xml = Files.readAllBytes(new File(classLoader.getResource(resource).getFile()).toPath());
+            assertTrue(DocumentValidator.validate(xml).isEmpty(), resource);
+            assertTrue(DocumentValidator.validate(xml).isEmpty(), resource);
+        }
+        final var invalid = FileUtils.readFileToString(new File(classLoader.getResource("Invoice1.xml").getFile()),
+                        StandardCharsets.UTF_8)
+                        .replace("<cbc:IssueDate>2020-06-13</cbc:IssueDate>", "<cbc:IssueDate>13.06.2020</cbc:IssueDate>");
+        assertFalse(DocumentValidator.validate(invalid.getBytes(StandardCharsets.UTF_8)).isEmpty());
+        assertSame(DocumentMarshaller.invoice().getSchema(), SchemaCache.get(DocumentType.INVOICE));
+    }
+
+    @Test
+    public void validateDoctype()
+        throws IOException
+    {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final var secret = Files.createTempFile("secret", ".txt");
+        try {
+            Files.writeString(secret, "SECRET-XXE-MARKER");
+            final var xml = FileUtils.readFileToString(new File(classLoader.getResource("Invoice1.xml").getFile()),
+                            StandardCharsets.UTF_8)
+                            .replace("<Invoice ", "<!DOCTYPE Invoice [<!ENTITY x SYSTEM \"" + secret.toUri()
+                                            + "\">]>\n<Invoice ")
+                            .replace("<cbc:IssueDate>2020-06-13</cbc:IssueDate>", "<cbc:IssueDate>&x;</cbc:IssueDate>")
+                            .getBytes(StandardCharsets.UTF_8);
+            for (final var errors : List.of(DocumentValidator.validate(xml),
+                            DocumentValidator.validate(DocumentType.INVOICE, xml))) {
+                assertFalse(errors.isEmpty());
+                for (final var error : errors) {
+                    assertFalse(error.getMessage().contains("SECRET-XXE-MARKER"), error.getMessage());
+                }
+            }
+        } finally {
+            Files.deleteIfExists(secret);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void validateSummary()
+        throws IOException
+    {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        DocumentValidator.validate(Files.readAllBytes(new File(classLoader.getResource("Summary1.xml").getFile())
+                        .toPath()));
+    }
+}